@@ -0,0 +1,217 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 调度热点路径的基准：等待队列、目标楼层选择、方向打分与一轮批量分配
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+    private static final Class<?> PASSENGER = Sources.type("Passenger");
+    private static final Class<?> ELEVATOR = Sources.type("Elevator");
+    private static final MethodHandle NEW_QUEUE =
+        Sources.constructor("RequestQueue", Sources.type("Building"));
+    private static final MethodHandle OFFER =
+        Sources.method("RequestQueue", "offer", PASSENGER);
+    private static final MethodHandle POLL = Sources.method("RequestQueue", "poll");
+    private static final MethodHandle POLL_AT =
+        Sources.method("RequestQueue", "poll", int.class);
+    private static final MethodHandle NEXT_TARGET =
+        Sources.method("RequestQueue", "nextTargetFloor", int.class, ELEVATOR);
+    private static final MethodHandle PRIORITY_AT =
+        Sources.method("RequestQueue", "getComprehensivePriorityAt", int.class);
+    private static final MethodHandle GET_QUEUE = Sources.method("Elevator", "getRequestQueue");
+    private static final MethodHandle GET_CAPACITY = Sources.method("Elevator", "getCapacity");
+    private static final MethodHandle PERSON_IN = Sources.method("Elevator", "personIn");
+    private static final MethodHandle RECEIVE = Sources.method("Elevator", "receive");
+    private static final MethodHandle PUBLISH = Sources.method("Elevator", "publish");
+    private static final MethodHandle UPDATE = Sources.method("Elevator", "update");
+    private static final MethodHandle INSIDE = Sources.getter("Elevator", "insideQueue");
+    private static final MethodHandle SCORE_VALID = Sources.setter("CabinLoad", "scoreValid");
+    private static final MethodHandle DISPATCH_OFFER = Sources.method("Dispatch", "offer",
+        PASSENGER, boolean.class, int.class);
+    private static final MethodHandle DISPATCH = Sources.method("Dispatch", "dispatch");
+    private static final MethodHandle DISPATCH_EMPTY = Sources.method("Dispatch", "isEmpty");
+    private static final MethodHandle STANDARD = Sources.method("Building", "standard");
+    private static final int TOWER_CARS = 48;
+    private static final int TOWER_TOP = 60;
+
+    // 等待乘客数
+    @Param({"16", "128", "512"})
+    private int depth;
+
+    // narrow：起点集中在 F1 附近三层；wide：起点分布在全部楼层
+    @Param({"narrow", "wide"})
+    private String spread;
+
+    // standard：题目给定的六部电梯、B4-F7；tower：48 部电梯、B4-F60，检验分配循环随规模的开销
+    @Param({"standard", "tower"})
+    private String topology;
+
+    private Object building;
+    private int[] floors;
+    private int cars;
+    private Object[] passengers;
+    private Object filledQueue;
+    private Object loadedElevator;
+    private Object loadedCabin;
+    private Object[] dispatchCars;
+    private Object dispatch;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Random random = new Random(42);
+        cars = "tower".equals(topology) ? TOWER_CARS : 6;
+        int top = "tower".equals(topology) ? TOWER_TOP : 7;
+        floors = new int[top + 4];
+        for (int i = 0; i < floors.length; i++) {
+            floors[i] = i < 4 ? i - 4 : i - 3;
+        }
+        if ("tower".equals(topology)) {
+            long[] speeds = new long[cars + 1];
+            Arrays.fill(speeds, 400);
+            building = Sources.create("Building", cars, -4, top, 6, speeds);
+        } else {
+            building = STANDARD.invoke();
+        }
+        passengers = new Object[depth];
+        for (int i = 0; i < depth; i++) {
+            int from = "narrow".equals(spread) ? floors[3 + random.nextInt(3)] :
+                floors[random.nextInt(floors.length)];
+            int to = floors[random.nextInt(floors.length)];
+            if (to == from) {
+                to = from == top ? top - 1 : from + (from == -1 ? 2 : 1);
+            }
+            passengers[i] = Sources.create("Passenger", i + 1, from, to, 1 + random.nextInt(100));
+        }
+        filledQueue = Sources.create("RequestQueue", building);
+        for (Object p : passengers) {
+            OFFER.invoke(filledQueue, p);
+        }
+        // 满载且没有等待乘客的电梯，使 update() 走到轿厢内的方向打分
+        Object[] fleet = (Object[]) Array.newInstance(ELEVATOR, cars + 1);
+        newDispatch(fleet);
+        loadedElevator = fleet[1];
+        int capacity = (int) GET_CAPACITY.invoke(loadedElevator);
+        for (int i = 0; i < Math.min(depth, capacity); i++) {
+            int to = floors[random.nextInt(floors.length)];
+            OFFER.invoke(GET_QUEUE.invoke(loadedElevator), Sources.create("Passenger",
+                i + 1, 1, to == 1 ? top : to, 1 + random.nextInt(100)));
+        }
+        PERSON_IN.invoke(loadedElevator);
+        loadedCabin = INSIDE.invoke(loadedElevator);
+        dispatchCars = (Object[]) Array.newInstance(ELEVATOR, cars + 1);
+        dispatch = newDispatch(dispatchCars);
+    }
+
+    private Object newDispatch(Object[] elevators) {
+        Object clock = Sources.create("VirtualClock",
+            new PrintStream(OutputStream.nullOutputStream()));
+        Object dispatch = Sources.create("Dispatch", elevators, clock,
+            Sources.create("Policy", Sources.create("EtaStrategy"), 5, 4));
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i] = Sources.create("Elevator", i, dispatch, elevators, clock, building);
+        }
+        return dispatch;
+    }
+
+    @Benchmark
+    public void offerThenPoll(Blackhole bh) throws Throwable {
+        Object queue = NEW_QUEUE.invoke(building);
+        for (Object p : passengers) {
+            OFFER.invoke(queue, p);
+        }
+        for (int i = 0; i < passengers.length; i++) {
+            bh.consume(POLL.invoke(queue));
+        }
+    }
+
+    @Benchmark
+    public void offerThenPollByFloor(Blackhole bh) throws Throwable {
+        Object queue = NEW_QUEUE.invoke(building);
+        for (Object p : passengers) {
+            OFFER.invoke(queue, p);
+        }
+        for (int floor : floors) {
+            Object p;
+            while ((p = POLL_AT.invoke(queue, floor)) != null) {
+                bh.consume(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public int nextTargetFloor() throws Throwable {
+        int floor = floors[cursor++ % floors.length];
+        return (int) NEXT_TARGET.invoke(filledQueue, floor, loadedElevator);
+    }
+
+    @Benchmark
+    public int comprehensivePriorityAt() throws Throwable {
+        int floor = floors[cursor++ % floors.length];
+        return (int) PRIORITY_AT.invoke(filledQueue, floor);
+    }
+
+    // 轿厢停在原地时方向打分会被缓存，每次调用前使缓存失效，测量的是打分本身
+    @Benchmark
+    public Object directionScoring() throws Throwable {
+        SCORE_VALID.invoke(loadedCabin, false);
+        return UPDATE.invoke(loadedElevator);
+    }
+
+    // 一次突发到达 depth 名乘客，反复分配直到全部分出；每轮后电梯处理邮箱中的分配命令，
+    // 再清空等待队列并发布快照，以模拟电梯接走乘客
+    @Benchmark
+    public void dispatchPass(Blackhole bh) throws Throwable {
+        for (Object p : passengers) {
+            DISPATCH_OFFER.invoke(dispatch, p, false, 0);
+        }
+        do {
+            DISPATCH.invoke(dispatch);
+            for (int i = 1; i <= cars; i++) {
+                RECEIVE.invoke(dispatchCars[i]);
+                Object queue = GET_QUEUE.invoke(dispatchCars[i]);
+                Object p;
+                while ((p = POLL.invoke(queue)) != null) {
+                    bh.consume(p);
+                }
+                PUBLISH.invoke(dispatchCars[i]);
+            }
+        } while (!(boolean) DISPATCH_EMPTY.invoke(dispatch));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(SchedulerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
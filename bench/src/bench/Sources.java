@@ -0,0 +1,93 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// 被测代码位于默认包，具名包无法直接引用，这里通过反射取得句柄；句柄存放在 static final 字段中，JIT 会将其内联
+final class Sources {
+    private Sources() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("scheduler classes must be on the classpath", e);
+        }
+    }
+
+    static MethodHandle method(String owner, String name, Class<?>... params) {
+        for (Method m : type(owner).getDeclaredMethods()) {
+            if (m.getName().equals(name) && m.getParameterCount() == params.length &&
+                sameTypes(m.getParameterTypes(), params)) {
+                m.setAccessible(true);
+                try {
+                    return MethodHandles.lookup().unreflect(m);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("no method " + owner + "." + name);
+    }
+
+    static MethodHandle constructor(String owner, Class<?>... params) {
+        try {
+            Constructor<?> c = type(owner).getDeclaredConstructor(params);
+            c.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(c);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle getter(String owner, String name) {
+        try {
+            Field f = type(owner).getDeclaredField(name);
+            f.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(f);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static MethodHandle setter(String owner, String name) {
+        try {
+            Field f = type(owner).getDeclaredField(name);
+            f.setAccessible(true);
+            return MethodHandles.lookup().unreflectSetter(f);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 逐个尝试构造方法，只在准备阶段使用，被测方法中使用 constructor 取得的句柄
+    static Object create(String owner, Object... args) {
+        for (Constructor<?> c : type(owner).getDeclaredConstructors()) {
+            if (c.getParameterCount() != args.length) {
+                continue;
+            }
+            try {
+                c.setAccessible(true);
+                return c.newInstance(args);
+            } catch (IllegalArgumentException e) {
+                // 参数类型不匹配，尝试下一个构造方法
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalStateException("no constructor for " + owner);
+    }
+
+    private static boolean sameTypes(Class<?>[] actual, Class<?>[] expected) {
+        for (int i = 0; i < actual.length; i++) {
+            if (actual[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
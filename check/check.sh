@@ -0,0 +1,47 @@
+#!/bin/sh
+# 回归检查：对 check/traces 下的输入做带校验的批量模拟，并确认写检查点不改变输出、
+# 从检查点恢复后的输出与原运行此后的输出一致。任一项失败时以非零状态退出。
+# 用法：check/check.sh [课程输入库的类路径，默认 elevator3.jar]
+set -e
+cd "$(dirname "$0")/.."
+lib=${1:-elevator3.jar}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+javac -encoding UTF-8 -cp "$lib" -d "$work/classes" src/*.java
+cp="$lib:$work/classes"
+traces=$(ls check/traces/*.txt)
+failed=0
+
+java -Delevator.verify=true -Delevator.sweep.strategy=eta,nearest,energy -cp "$cp" SweepRunner \
+    $traces > "$work/sweep.txt"
+cat "$work/sweep.txt"
+if grep -q 'unfinished=[1-9]\|violations=[1-9]' "$work/sweep.txt"; then
+    echo "FAIL: sweep reports unfinished runs or violations"
+    failed=1
+fi
+
+for trace in $traces; do
+    java -Delevator.clock=virtual -cp "$cp" MainClass < "$trace" > "$work/plain.txt"
+    for at in 3000 8000 15000; do
+        java -Delevator.clock=virtual -Delevator.checkpoint="$work/cp.bin" \
+            -Delevator.checkpoint.at=$at -cp "$cp" MainClass < "$trace" > "$work/written.txt"
+        java -Delevator.clock=virtual -Delevator.restore="$work/cp.bin" -cp "$cp" MainClass \
+            < "$trace" > "$work/restored.txt"
+        # 原运行中时间晚于检查点时刻的部分
+        awk -v at=$at '{ if (int(substr($0, 2, index($0, "]") - 2) * 1000 + 0.5) > at) print }' \
+            "$work/plain.txt" > "$work/tail.txt"
+        if ! cmp -s "$work/plain.txt" "$work/written.txt"; then
+            echo "FAIL: $trace checkpoint at $at changes the output"
+            failed=1
+        fi
+        if ! cmp -s "$work/tail.txt" "$work/restored.txt"; then
+            echo "FAIL: $trace restored at $at differs from the original run"
+            failed=1
+        fi
+    done
+done
+
+if [ $failed -eq 0 ]; then
+    echo "all checks passed"
+fi
+exit $failed
@@ -0,0 +1,110 @@
+// 楼宇拓扑：电梯数量、楼层范围、额定载客量与各电梯的运行速度，启动时确定，之后只读
+public final class Building {
+    private static final int defaultCars = 6;
+    private static final int defaultCapacity = 6;
+    private static final long defaultTimePerFloor = 400;
+    private final int cars;
+    private final int minFloor;
+    private final int maxFloor;
+    private final int capacity;
+    // 下标为电梯编号，0 号不用
+    private final long[] timePerFloor;
+
+    public Building(int cars, int minFloor, int maxFloor, int capacity, long[] timePerFloor) {
+        if (cars < 1 || minFloor > maxFloor || minFloor == 0 || maxFloor == 0 || capacity < 1 ||
+            timePerFloor.length != cars + 1) {
+            throw new IllegalArgumentException("invalid building topology");
+        }
+        this.cars = cars;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.capacity = capacity;
+        this.timePerFloor = timePerFloor.clone();
+    }
+
+    // 题目给定的拓扑：六部电梯，B4-F7，载客 6 人，每层 0.4s
+    public static Building standard() {
+        return new Building(defaultCars, Floors.MIN_FLOOR, Floors.MAX_FLOOR, defaultCapacity,
+            uniform(defaultCars, defaultTimePerFloor));
+    }
+
+    // 通过 -Delevator.cars、-Delevator.floors（如 B4-F60）、-Delevator.capacity、
+    // -Delevator.speed（每层毫秒数，可用逗号为每部电梯分别给出）配置，未给出的取题目默认值
+    public static Building fromProperties() {
+        int cars = Integer.getInteger("elevator.cars", defaultCars);
+        int minFloor = Floors.MIN_FLOOR;
+        int maxFloor = Floors.MAX_FLOOR;
+        String floors = System.getProperty("elevator.floors");
+        if (floors != null) {
+            String[] range = floors.split("-");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("elevator.floors must look like B4-F7");
+            }
+            minFloor = Floors.parse(range[0]);
+            maxFloor = Floors.parse(range[1]);
+        }
+        int capacity = Integer.getInteger("elevator.capacity", defaultCapacity);
+        long[] speeds = uniform(cars, defaultTimePerFloor);
+        String speed = System.getProperty("elevator.speed");
+        if (speed != null) {
+            String[] values = speed.split(",");
+            if (values.length != 1 && values.length != cars) {
+                throw new IllegalArgumentException("elevator.speed needs 1 or " + cars + " values");
+            }
+            for (int i = 1; i <= cars; i++) {
+                speeds[i] = Long.parseLong(values[values.length == 1 ? 0 : i - 1].trim());
+            }
+        }
+        return new Building(cars, minFloor, maxFloor, capacity, speeds);
+    }
+
+    public Building withCapacity(int capacity) {
+        return new Building(cars, minFloor, maxFloor, capacity, timePerFloor);
+    }
+
+    private static long[] uniform(int cars, long millis) {
+        long[] speeds = new long[cars + 1];
+        for (int i = 1; i <= cars; i++) {
+            speeds[i] = millis;
+        }
+        return speeds;
+    }
+
+    public int getCars() {
+        return cars;
+    }
+
+    public int getMinFloor() {
+        return minFloor;
+    }
+
+    public int getMaxFloor() {
+        return maxFloor;
+    }
+
+    // 按楼层编号的数组长度，下标为楼层减去最低层（没有 0 层，对应位置空置）
+    public int floorSlots() {
+        return maxFloor - minFloor + 1;
+    }
+
+    public int slot(int floor) {
+        return floor - minFloor;
+    }
+
+    public boolean contains(int floor) {
+        return floor >= minFloor && floor <= maxFloor;
+    }
+
+    // 电梯初始停在 F1，楼宇不含 F1 时停在最接近 F1 的一端
+    public int getStartFloor() {
+        return minFloor > 1 ? minFloor : maxFloor < 1 ? maxFloor : 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTimePerFloor(int elevatorId) {
+        return timePerFloor[elevatorId];
+    }
+}
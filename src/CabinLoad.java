@@ -0,0 +1,167 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+// 轿厢内的乘客：按目的楼层分桶，同时按优先级从低到高排成一个堆，供挤出乘客时选择；
+// 下客只访问当前楼层的桶，方向打分按目的楼层汇总，楼层与乘客不变时直接复用
+public class CabinLoad {
+    private final int minFloor;
+    // 同一个句柄同时挂在全体乘客的堆（slot 0）和目的楼层的堆（slot 1）上
+    private final RequestHeap riders = new RequestHeap(0, true);
+    private final RequestHeap[] byDestination;
+    private final BitSet destinations;
+    private final int[] prioritySum;
+    private long seq = 0;
+    private boolean scoreValid = false;
+    private int scoredFloor;
+    private double upScore;
+    private double downScore;
+
+    public CabinLoad(Building building) {
+        this.minFloor = building.getMinFloor();
+        this.byDestination = new RequestHeap[building.floorSlots()];
+        for (int i = 0; i < byDestination.length; i++) {
+            byDestination[i] = new RequestHeap(1);
+        }
+        this.destinations = new BitSet(byDestination.length);
+        this.prioritySum = new int[byDestination.length];
+    }
+
+    public int size() {
+        return riders.size();
+    }
+
+    public boolean isEmpty() {
+        return riders.isEmpty();
+    }
+
+    public void add(Passenger passenger) {
+        int slot = passenger.getToFloor() - minFloor;
+        RequestHandle handle = new RequestHandle(passenger, passenger.getToFloor(), seq++);
+        riders.add(handle);
+        byDestination[slot].add(handle);
+        account(slot, passenger.getPriority());
+    }
+
+    // 优先级最低的乘客，轿厢为空时返回 null
+    public Passenger peekLowest() {
+        RequestHandle handle = riders.peek();
+        return handle == null ? null : handle.getPassenger();
+    }
+
+    public Passenger pollLowest() {
+        RequestHandle handle = riders.poll();
+        if (handle == null) {
+            return null;
+        }
+        int slot = handle.getFloor() - minFloor;
+        byDestination[slot].remove(handle);
+        account(slot, -handle.getPassenger().getPriority());
+        return handle.getPassenger();
+    }
+
+    public boolean hasStopAt(int floor) {
+        return destinations.get(floor - minFloor);
+    }
+
+    // 从 floor 沿 direction（1 向上，-1 向下）方向，不含 floor 本身，是否还有目的楼层
+    public boolean hasStopBeyond(int floor, int direction) {
+        int slot = floor - minFloor;
+        return direction > 0 ? destinations.nextSetBit(slot + 1) >= 0 :
+            destinations.previousSetBit(slot - 1) >= 0;
+    }
+
+    // 取出一名目的地为 floor 的乘客，没有时返回 null
+    public Passenger pollAt(int floor) {
+        int slot = floor - minFloor;
+        if (slot < 0 || slot >= byDestination.length) {
+            return null;
+        }
+        RequestHandle handle = byDestination[slot].poll();
+        if (handle == null) {
+            return null;
+        }
+        riders.remove(handle);
+        account(slot, -handle.getPassenger().getPriority());
+        return handle.getPassenger();
+    }
+
+    // 目的地在 [low, high] 之外的乘客中最低的那个楼层，没有时返回 0
+    public int firstStopOutside(int low, int high) {
+        int below = destinations.nextSetBit(0);
+        if (below >= 0 && below + minFloor < low) {
+            return below + minFloor;
+        }
+        int above = destinations.nextSetBit(high - minFloor + 1);
+        return above >= 0 ? above + minFloor : 0;
+    }
+
+    public void markStops(boolean[] stops) {
+        for (int s = destinations.nextSetBit(0); s >= 0; s = destinations.nextSetBit(s + 1)) {
+            stops[s] = true;
+        }
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeLong(seq);
+        List<RequestHandle> handles = riders.handles();
+        out.writeInt(handles.size());
+        for (RequestHandle handle : handles) {
+            out.writeLong(handle.getSeq());
+            handle.getPassenger().save(out);
+        }
+    }
+
+    public void restore(DataInputStream in) throws IOException {
+        long next = in.readLong();
+        for (int n = in.readInt(); n > 0; n--) {
+            seq = in.readLong();
+            add(Passenger.restore(in));
+        }
+        seq = next;
+    }
+
+    // 向上/向下各目的楼层的 优先级之和 ÷ 距离 的累加
+    public double getUpScore(int curFloor) {
+        score(curFloor);
+        return upScore;
+    }
+
+    public double getDownScore(int curFloor) {
+        score(curFloor);
+        return downScore;
+    }
+
+    // 得分按到当前楼层的距离加权，每移动一层各项权重都会变化，无法像优先级之和那样随上下客增量维护；
+    // 换层后只遍历有乘客的目的楼层重算，代价不超过楼层数，与轿厢内人数无关，同一楼层内直接复用
+    private void score(int curFloor) {
+        if (scoreValid && scoredFloor == curFloor) {
+            return;
+        }
+        upScore = 0;
+        downScore = 0;
+        for (int s = destinations.nextSetBit(0); s >= 0; s = destinations.nextSetBit(s + 1)) {
+            int floor = s + minFloor;
+            double weight = (double) prioritySum[s] / Floors.distance(curFloor, floor);
+            if (floor > curFloor) {
+                upScore += weight;
+            } else if (floor < curFloor) {
+                downScore += weight;
+            }
+        }
+        scoredFloor = curFloor;
+        scoreValid = true;
+    }
+
+    private void account(int slot, int priority) {
+        prioritySum[slot] += priority;
+        if (byDestination[slot].isEmpty()) {
+            destinations.clear(slot);
+        } else {
+            destinations.set(slot);
+        }
+        scoreValid = false;
+    }
+}
@@ -0,0 +1,56 @@
+// 单部电梯的运行统计，只由该电梯的线程写入，其他线程随时读取
+public class CarMetrics {
+    private volatile long floorsMoved = 0;
+    private volatile long doorCycles = 0;
+    private volatile long busyMillis = 0;
+    // 电梯线程被唤醒的次数，其中醒来时邮箱仍为空的次数，以及处理完新命令仍无事可做、再次等待的次数
+    private volatile long wakeups = 0;
+    private volatile long spuriousWakeups = 0;
+    private volatile long uselessWakeups = 0;
+
+    public void moved() {
+        floorsMoved = floorsMoved + 1;
+    }
+
+    public void doorOpened() {
+        doorCycles = doorCycles + 1;
+    }
+
+    // 移动、开关门、临时调度停靠和改造所占用的时间
+    public void busy(long millis) {
+        busyMillis = busyMillis + millis;
+    }
+
+    public void wokeUp(int spurious) {
+        wakeups = wakeups + 1;
+        spuriousWakeups = spuriousWakeups + spurious;
+    }
+
+    public void uselessWakeup() {
+        uselessWakeups = uselessWakeups + 1;
+    }
+
+    public long getFloorsMoved() {
+        return floorsMoved;
+    }
+
+    public long getDoorCycles() {
+        return doorCycles;
+    }
+
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    public long getSpuriousWakeups() {
+        return spuriousWakeups;
+    }
+
+    public long getUselessWakeups() {
+        return uselessWakeups;
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+// 一轮分配开始时电梯状态的快照，取自电梯发布的只读快照，本轮内的分配只修改这里
+public class CarState {
+    // 轿厢外的已分配但未上车的乘客数不超过额定载客量加上这一余量
+    private final int spareLoad;
+    private final Elevator elevator;
+    private final Building building;
+    private ElevatorSnapshot snapshot;
+    // 已投递但电梯尚未处理的分配，按投递顺序排列
+    private final Queue<Passenger> inFlight = new ArrayDeque<>();
+    private long assignsSent = 0;
+    private final boolean[] stops;
+    // 停靠楼层的树状数组，楼层多时估算途经停靠数不必逐层扫描
+    private final int[] stopTree;
+    private int lowestStop;
+    private int highestStop;
+    private boolean available;
+    private int load;
+    private int inside;
+    private int floor;
+    private int direction;
+    private long timePerFloor;
+
+    public CarState(Elevator elevator, int spareLoad) {
+        this.elevator = elevator;
+        this.spareLoad = spareLoad;
+        this.building = elevator.getBuilding();
+        this.stops = new boolean[building.floorSlots()];
+        this.stopTree = new int[stops.length + 1];
+    }
+
+    public void refresh() {
+        snapshot = elevator.getSnapshot();
+        available = snapshot.isAvailable() && !elevator.hasPendingHold();
+        while (inFlight.size() > assignsSent - snapshot.getAssignsApplied()) {
+            inFlight.poll();
+        }
+        load = snapshot.getLoad() + inFlight.size();
+        inside = snapshot.getInside();
+        floor = snapshot.getFloor();
+        direction = snapshot.getDirection();
+        timePerFloor = snapshot.getTimePerFloor();
+        snapshot.copyStopsTo(stops);
+        for (Passenger passenger : inFlight) {
+            stops[building.slot(passenger.getCurFloor())] = true;
+        }
+        lowestStop = Integer.MAX_VALUE;
+        highestStop = Integer.MIN_VALUE;
+        for (int i = 1; i <= stops.length; i++) {
+            stopTree[i] = stops[i - 1] ? 1 : 0;
+        }
+        for (int i = 1; i <= stops.length; i++) {
+            int parent = i + (i & -i);
+            if (parent <= stops.length) {
+                stopTree[parent] += stopTree[i];
+            }
+            if (stops[i - 1]) {
+                lowestStop = Math.min(lowestStop, i - 1 + building.getMinFloor());
+                highestStop = i - 1 + building.getMinFloor();
+            }
+        }
+    }
+
+    // 从检查点恢复：电梯邮箱中尚未处理的分配按投递顺序视为在途
+    public void restoreInFlight(List<Passenger> pending) {
+        inFlight.addAll(pending);
+        assignsSent = elevator.getSnapshot().getAssignsApplied() + pending.size();
+    }
+
+    // 本轮分配给该电梯后更新快照，后续乘客据此估算
+    public void assign(Passenger passenger) {
+        inFlight.add(passenger);
+        assignsSent++;
+        load++;
+        int floor = passenger.getCurFloor();
+        int slot = building.slot(floor);
+        if (stops[slot]) {
+            return;
+        }
+        stops[slot] = true;
+        for (int i = slot + 1; i <= stops.length; i += i & -i) {
+            stopTree[i]++;
+        }
+        lowestStop = Math.min(lowestStop, floor);
+        highestStop = Math.max(highestStop, floor);
+    }
+
+    public boolean canTake(Passenger passenger) {
+        return available && load < getCapacity() + spareLoad &&
+            snapshot.canArriveAt(passenger.getCurFloor());
+    }
+
+    // 没有乘客也没有待接乘客，可以调去停靠
+    public boolean isIdle() {
+        return available && load == 0 && inside == 0;
+    }
+
+    // 换乘层须留给搭档电梯通过，不在此停靠
+    public boolean canParkAt(int floor) {
+        return snapshot.canArriveAt(floor) && floor != snapshot.getTransferFloor();
+    }
+
+    public int getParkFloor() {
+        return snapshot.getParkFloor();
+    }
+
+    public boolean canArriveTargetOf(Passenger passenger) {
+        return snapshot.canArriveAt(passenger.getToFloor());
+    }
+
+    // 改造后的电梯若不能直达终点，只能把乘客送到换乘层；乘客已在换乘层时再分配给它没有意义
+    public boolean canCarryCloser(Passenger passenger) {
+        return canArriveTargetOf(passenger) ||
+            passenger.getCurFloor() != snapshot.getTransferFloor();
+    }
+
+    public int getPartner() {
+        return snapshot.getPartner();
+    }
+
+    public boolean hasStopAt(int floor) {
+        return stops[building.slot(floor)];
+    }
+
+    // from 与 to 之间（不含两端）的停靠楼层数
+    public int countStopsBetween(int from, int to) {
+        int low = Math.min(from, to);
+        int high = Math.max(from, to);
+        if (high - low < 2) {
+            return 0;
+        }
+        return countStopsUpTo(building.slot(high) - 1) - countStopsUpTo(building.slot(low));
+    }
+
+    // 下标不超过 slot 的停靠楼层数
+    private int countStopsUpTo(int slot) {
+        int count = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i) {
+            count += stopTree[i];
+        }
+        return count;
+    }
+
+    // 本轮已规划的行程覆盖当前楼层与所有停靠楼层，再覆盖 [low, high] 需要多走的层数
+    public int floorsBeyondRoute(int low, int high) {
+        int routeLow = Math.min(floor, lowestStop);
+        int routeHigh = Math.max(floor, highestStop);
+        return Floors.distance(Math.min(routeLow, low), routeLow) +
+            Floors.distance(routeHigh, Math.max(routeHigh, high));
+    }
+
+    // 当前楼层沿 direction 方向最远的停靠楼层，没有时返回当前楼层
+    public int getFarthestStop(int direction) {
+        if (direction > 0) {
+            return highestStop > floor ? highestStop : floor;
+        }
+        return lowestStop < floor ? lowestStop : floor;
+    }
+
+    public int getLoad() {
+        return load;
+    }
+
+    public int getInside() {
+        return inside;
+    }
+
+    public int getCapacity() {
+        return elevator.getCapacity();
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public long getTimePerFloor() {
+        return timePerFloor;
+    }
+}
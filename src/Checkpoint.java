@@ -0,0 +1,81 @@
+import com.oocourse.elevator3.Request;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+// 虚拟时钟模式下整个系统的检查点：在执行完指定时刻及之前的所有事件、下一个事件之前写出，不改变本次运行；
+// 可在新进程中恢复后继续运行，恢复后的输出与原运行此后的输出相同，用于跳过预热、从高峰中途分叉比较参数或崩溃后续跑。
+// 格式为：
+//   magic、version | 虚拟时间:long | 进展计数:long | 楼宇拓扑 | 改造任务（请求、未清空的电梯数、换乘层令牌）
+//   | 各电梯状态（含进行中的定时动作的种类与邮箱中的命令）| 分配线程状态 | 事件队列（种类、参数、到期时间）
+// 乘客按所在位置就地写出：待分配队列、电梯的等待队列、轿厢或邮箱中的分配命令；请求（临时调度、改造）写为输入行文本，
+// 其余位置按 A 电梯编号引用改造任务。运行指标不在检查点中，恢复后的指标只统计恢复之后的部分（乘客进入系统的时刻会保留）
+public final class Checkpoint {
+    static final int MAGIC = 0x454c434b;
+    static final int VERSION = 2;
+
+    private Checkpoint() {
+    }
+
+    public static void write(Path path, Simulation simulation) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            simulation.save(out);
+        }
+    }
+
+    // 恢复为一个新的模拟，拓扑取自检查点，分配策略取 policy，可与写出时不同
+    public static Simulation read(Path path, VirtualClock clock, Policy policy)
+        throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not an elevator checkpoint: " + path);
+            }
+            return Simulation.restore(in, clock, policy);
+        }
+    }
+
+    static void writeBuilding(DataOutputStream out, Building building) throws IOException {
+        out.writeInt(building.getCars());
+        out.writeInt(building.getMinFloor());
+        out.writeInt(building.getMaxFloor());
+        out.writeInt(building.getCapacity());
+        for (int i = 1; i <= building.getCars(); i++) {
+            out.writeLong(building.getTimePerFloor(i));
+        }
+    }
+
+    static Building readBuilding(DataInputStream in) throws IOException {
+        int cars = in.readInt();
+        int minFloor = in.readInt();
+        int maxFloor = in.readInt();
+        int capacity = in.readInt();
+        long[] speeds = new long[cars + 1];
+        for (int i = 1; i <= cars; i++) {
+            speeds[i] = in.readLong();
+        }
+        return new Building(cars, minFloor, maxFloor, capacity, speeds);
+    }
+
+    // null 写为空串
+    static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeUTF(request == null ? "" : request.toString());
+    }
+
+    static Request readRequest(DataInputStream in) throws IOException {
+        String text = in.readUTF();
+        if (text.isEmpty()) {
+            return null;
+        }
+        return TimedRequest.parse(Collections.singletonList(0L), text).get(0).getRequest();
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// 候梯需求预测：把最近一段时间等分为若干时间片，按时间片统计新请求的起点楼层，
+// 越近的时间片权重越高；只由分配线程在持有锁时访问
+public class DemandForecast {
+    private static final int slotCount = 8;
+    private final int minFloor;
+    private final long slotMillis;
+    // 环形的时间片，下标为时间片编号对 slotCount 取模，每片内下标为楼层减去最低层
+    private final int[][] counts;
+    private long currentSlot = 0;
+
+    public DemandForecast(Building building, long window) {
+        this.minFloor = building.getMinFloor();
+        this.slotMillis = Math.max(1, window / slotCount);
+        this.counts = new int[slotCount][building.floorSlots()];
+    }
+
+    public void record(long now, int floor) {
+        advance(now);
+        counts[(int) (currentSlot % slotCount)][floor - minFloor]++;
+    }
+
+    // 滑出窗口的时间片清零后复用
+    private void advance(long now) {
+        long slot = now / slotMillis;
+        if (slot <= currentSlot) {
+            return;
+        }
+        for (long s = Math.max(currentSlot + 1, slot - slotCount + 1); s <= slot; s++) {
+            Arrays.fill(counts[(int) (s % slotCount)], 0);
+        }
+        currentSlot = slot;
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeLong(currentSlot);
+        for (int[] slot : counts) {
+            for (int count : slot) {
+                out.writeInt(count);
+            }
+        }
+    }
+
+    public void restore(DataInputStream in) throws IOException {
+        currentSlot = in.readLong();
+        for (int[] slot : counts) {
+            for (int i = 0; i < slot.length; i++) {
+                slot[i] = in.readInt();
+            }
+        }
+    }
+
+    // 各楼层的预测需求：当前时间片权重为 slotCount，每早一片减一
+    public int[] predict(long now) {
+        advance(now);
+        int[] demand = new int[counts[0].length];
+        for (int age = 0; age < slotCount; age++) {
+            int[] slot = counts[(int) ((currentSlot - age + slotCount * 2L) % slotCount)];
+            for (int i = 0; i < demand.length; i++) {
+                demand[i] += slot[i] * (slotCount - age);
+            }
+        }
+        return demand;
+    }
+}
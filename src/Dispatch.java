@@ -2,244 +2,596 @@ import com.oocourse.elevator3.PersonRequest;
 import com.oocourse.elevator3.UpdateRequest;
 import com.oocourse.elevator3.ScheRequest;
 import com.oocourse.elevator3.Request;
-import com.oocourse.elevator3.TimableOutput;
 
-import java.util.HashMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
 import java.util.PriorityQueue;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Dispatch implements Runnable {
+    // 用显式锁而不是 synchronized/wait：虚拟线程在 synchronized 中阻塞会占住载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
     private final Elevator[] elevators;
     private volatile boolean inputIsEnd = false;
     private volatile boolean allElevatorsBusy = false;
-    private final Object busyLock = new Object();
-    private final Map<PersonRequest, Integer> nowFloorMap = new HashMap<>();
+    // 分配线程即将等待时置位，输入阶段只在此时进入锁唤醒分配线程
+    private volatile boolean idle = false;
+    // 实时模式下的输入阶段，虚拟时钟模式下为 null，请求直接通过 offer(Request) 提交
+    private InputStage input;
+    // 有新请求、电梯空出、临时调度/改造结束或乘客到达时置位，分配线程只在此时醒来
+    private boolean stateChanged = false;
     private final Queue<ScheRequest> unDispatchSche = new LinkedList<>();
-    private final Queue<UpdateRequest> unDispatchUpdate = new LinkedList<>();
-    private final PriorityQueue<PersonRequest> unDispatchQueue =
+    private final Queue<UpdateTask> unDispatchUpdate = new LinkedList<>();
+    private final PriorityQueue<Passenger> unDispatchQueue =
         new PriorityQueue<>(11,
-        Comparator.comparing(PersonRequest::getPriority).reversed());
-    private static int personRequestReceive = 0;
-    private static int personRequestArrive = 0;
-    private ExecutorService executor = Executors.newCachedThreadPool();
+        Comparator.comparing(Passenger::getPriority).reversed());
+    private int personRequestReceive = 0;
+    private int personRequestArrive = 0;
+    private ExecutorService executor;
     private List<Future<?>> futures = new ArrayList<>();
+    private final List<UpdateTask> pendingUpdates = new ArrayList<>();
+    private final SimClock clock;
+    private final Policy policy;
+    // 一轮批量分配所依据的电梯状态快照，电梯全部创建后才初始化
+    private CarState[] cars;
+    private final Metrics metrics;
+    // 空闲电梯停靠所依据的需求预测，未开启时为 null，电梯全部创建后才初始化
+    private DemandForecast forecast;
+    // 最近一次发给各电梯的停靠楼层，分配了乘客后清零，避免重复发送相同的命令
+    private final int[] parkSent;
 
-    public Dispatch(Elevator[] elevators) {
+    public Dispatch(Elevator[] elevators, SimClock clock, Policy policy) {
         this.elevators = elevators;
+        this.clock = clock;
+        this.policy = policy;
+        this.metrics = new Metrics(clock, elevators.length);
+        this.parkSent = new int[elevators.length];
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // 其他线程进入分配线程的锁之前取一次时间，进入后记录等待时长
+    private void lockAcquired(long since) {
+        metrics.lockWaited(System.nanoTime() - since);
+    }
+
+    // 须在分配线程启动前调用
+    public void setInputStage(InputStage input) {
+        this.input = input;
+    }
+
+    // 改造任务的执行线程，须在分配线程启动前调用，未设置时按需创建平台线程池
+    public void setUpdateExecutor(ExecutorService executor) {
+        this.executor = executor;
     }
 
     public boolean allElevatorsBusy() {
         return allElevatorsBusy;
     }
 
-    public synchronized void onePersonArrive() {
-        //TimableOutput.println("one person arrive");
-        personRequestArrive++;
-        notifyAll();
+    // 调用方需持有锁。只有分配线程会在 changed 上等待，且只在它已进入等待时才需要唤醒
+    private void stateChanged() {
+        stateChanged = true;
+        if (idle) {
+            changed.signal();
+        }
     }
 
-    public synchronized void hasScheEnd() {
-        notifyAll();
+    // 到达只影响结束判断：电梯腾出的容量另由 hasFreeElevator 通知，只有最后一名乘客到达时才唤醒分配线程
+    public void onePersonArrive() {
+        long since = System.nanoTime();
+        lock.lock();
+        try {
+            lockAcquired(since);
+            personRequestArrive++;
+            if (isEnd()) {
+                stateChanged();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized boolean isEmpty() {
-        //TimableOutput.println("dispatch isEmpty has lock");
-        notifyAll();
+    // 调用方需持有锁
+    private boolean isEmpty() {
         return unDispatchQueue.isEmpty() && unDispatchSche.isEmpty() && unDispatchUpdate.isEmpty();
     }
 
-    public synchronized void setInputIsEnd() {
-        inputIsEnd = true;
-        //TimableOutput.println("Dispatch is set end");
-        notifyAll();
+    public void setInputIsEnd() {
+        lock.lock();
+        try {
+            inputIsEnd = true;
+            stateChanged();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized boolean isEnd() {
+    // 调用方需持有锁
+    private boolean isEnd() {
         return inputIsEnd && personRequestArrive == personRequestReceive;
     }
 
-    public synchronized void dispatchWait() throws InterruptedException {
-        wait();
+    public boolean hasStateChanged() {
+        lock.lock();
+        try {
+            return stateChanged;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void hasFreeElevator() {
-        synchronized (busyLock) {
-            //TimableOutput.println("has free elevator!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
+        long since = System.nanoTime();
+        lock.lock();
+        try {
+            lockAcquired(since);
             allElevatorsBusy = false;
-            busyLock.notifyAll();
+            stateChanged();
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void offer(Request r, Boolean isRearrange, Boolean first, int nowFloor) {
-        if (r instanceof PersonRequest) {
-            PersonRequest pr = (PersonRequest) r;
-            unDispatchQueue.offer(pr);
-            if (first) {
-                nowFloorMap.put(pr, intOf(pr.getFromFloor()));
-            }
+    public void offer(Passenger passenger, boolean isRearrange, int nowFloor) {
+        long since = System.nanoTime();
+        lock.lock();
+        try {
+            lockAcquired(since);
             if (isRearrange) {
-                //TimableOutput.println(pr + " nowFloor is reset to " + nowFloor);
-                nowFloorMap.put(pr, nowFloor);
+                passenger.setCurFloor(nowFloor);
             }
-            if (!isRearrange && first) {
-                personRequestReceive++;
+            requeue(passenger);
+            stateChanged();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 电梯开始临时调度或改造时交回全部未上车的乘客：一次进入锁、一次唤醒，下一轮分配一并重新分配
+    public void offerAll(List<Passenger> passengers) {
+        long since = System.nanoTime();
+        lock.lock();
+        try {
+            lockAcquired(since);
+            for (Passenger passenger : passengers) {
+                requeue(passenger);
             }
-        } else if (r instanceof ScheRequest) {
-            ScheRequest sr = (ScheRequest) r;
-            unDispatchSche.offer(sr);
-        } else if (r instanceof UpdateRequest) {
-            UpdateRequest ur = (UpdateRequest) r;
+            stateChanged();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用方需持有锁
+    private void requeue(Passenger passenger) {
+        // 没有送到换乘层就被放下，为第二程预留的搭档电梯不必再等
+        if (passenger.getTransferCar() != 0) {
+            elevators[passenger.getTransferCar()].releaseTransfer();
+            passenger.setTransferCar(0);
+        }
+        passenger.countReassignment();
+        unDispatchQueue.offer(passenger);
+    }
+
+    public void offer(Request r) {
+        lock.lock();
+        try {
+            admit(prepare(r));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 乘客请求只在这里解析一次，不需要持有锁，由输入阶段的解析线程调用
+    public Object prepare(Request r) {
+        clock.record(r);
+        if (r instanceof PersonRequest) {
+            Passenger passenger = new Passenger((PersonRequest) r);
+            metrics.offered(passenger);
+            return passenger;
+        }
+        return r;
+    }
+
+    // 输入阶段写入队列后调用，分配线程正在分配时会在本轮结束后自行取走，不需要进入锁
+    public void inputArrived() {
+        if (idle) {
+            lock.lock();
             try {
-                elevators[ur.getElevatorAId()].acceptUpdate(ur);
-                elevators[ur.getElevatorBId()].acceptUpdate(ur);
-            } catch (Exception e) {
-                e.printStackTrace();
+                stateChanged();
+            } finally {
+                lock.unlock();
             }
-            unDispatchUpdate.add(ur);
-            hasFreeElevator();
         }
-        notifyAll();
     }
 
-    private synchronized void dispatch() throws InterruptedException {
+    // 输入队列已满时由解析线程调用：先取空队列保持请求顺序，再提交这一条
+    public void offerDirect(Object item) {
+        long since = System.nanoTime();
+        lock.lock();
+        try {
+            lockAcquired(since);
+            input.drainTo(this);
+            admit(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用方需持有锁
+    void admit(Object item) {
+        if (item instanceof Passenger) {
+            Passenger passenger = (Passenger) item;
+            unDispatchQueue.offer(passenger);
+            personRequestReceive++;
+            if (policy.parksIdleCars()) {
+                forecast().record(clock.now(), passenger.getCurFloor());
+            }
+        } else if (item instanceof ScheRequest) {
+            unDispatchSche.offer((ScheRequest) item);
+        } else if (item instanceof UpdateRequest) {
+            UpdateRequest r = (UpdateRequest) item;
+            UpdateTask task = new UpdateTask(r, elevators, clock, metrics);
+            elevators[task.getRequest().getElevatorAId()].acceptUpdate(task);
+            elevators[task.getRequest().getElevatorBId()].acceptUpdate(task);
+            parkSent[task.getRequest().getElevatorAId()] = 0;
+            parkSent[task.getRequest().getElevatorBId()] = 0;
+            unDispatchUpdate.add(task);
+            allElevatorsBusy = false;
+        }
+        stateChanged();
+    }
+
+    // 调用方需持有锁，返回本轮是否向电梯发出了命令或启动了改造
+    private boolean dispatch() {
+        boolean acted = !unDispatchSche.isEmpty() || !unDispatchUpdate.isEmpty();
         while (!unDispatchSche.isEmpty()) {
-            ScheRequest sr = unDispatchSche.peek();
-            elevators[sr.getElevatorId()].getRequestQueue().offer(unDispatchSche.poll(),  0);
+            ScheRequest sr = unDispatchSche.poll();
+            elevators[sr.getElevatorId()].schedule(sr);
+            parkSent[sr.getElevatorId()] = 0;
         }
         while (!unDispatchUpdate.isEmpty()) {
-            UpdateRequest ur = unDispatchUpdate.poll();
-            Future<?> future = executor.submit(() -> {
-                try {
-                    elevators[ur.getElevatorAId()].wait2clearInside();
-                    elevators[ur.getElevatorBId()].wait2clearInside();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+            UpdateTask task = unDispatchUpdate.poll();
+            if (clock.isVirtual()) {
+                // 虚拟时钟模式下由 Simulation 在两部电梯清空后启动改造
+                pendingUpdates.add(task);
+            } else {
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool();
                 }
-                TimableOutput.println(String.format("UPDATE-BEGIN-%d-%d",
-                    ur.getElevatorAId(), ur.getElevatorBId()));
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                futures.add(executor.submit(task));
+            }
+        }
+        if (unDispatchQueue.isEmpty()) {
+            if (policy.parksIdleCars()) {
+                refreshCars();
+                acted |= park();
+            }
+            return acted;
+        }
+        // 先置位再读取快照：电梯发布快照后若看到置位会唤醒分配线程，不会错过本轮之后空出的电梯
+        allElevatorsBusy = true;
+        // 一次取空待分配队列，基于同一份快照分配，分配后只更新快照
+        refreshCars();
+        List<Passenger> deferred = new ArrayList<>();
+        while (!unDispatchQueue.isEmpty()) {
+            Passenger pr = unDispatchQueue.poll();
+            int target = policy.getStrategy().select(pr, cars);
+            if (target == 0) {
+                deferred.add(pr);
+                continue;
+            }
+            acted = true;
+            clock.log(EventType.RECEIVE, pr.getPersonId(), elevators[target].getId(), 0);
+            metrics.received(pr);
+            planTransfer(pr, target);
+            elevators[target].assign(pr);
+            cars[target].assign(pr);
+            parkSent[target] = 0;
+        }
+        unDispatchQueue.addAll(deferred);
+        allElevatorsBusy = !deferred.isEmpty();
+        return park() || acted;
+    }
+
+    // 电梯只能把乘客送到换乘层时，同时为第二程预留搭档电梯，乘客到换乘层后由第一程的电梯直接交接，
+    // 不再回到待分配队列；须在投递第一程之前设置，电梯处理分配命令时能看到预留
+    private void planTransfer(Passenger pr, int target) {
+        int partner = cars[target].getPartner();
+        if (partner == 0 || cars[target].canArriveTargetOf(pr) ||
+            !cars[partner].canArriveTargetOf(pr)) {
+            return;
+        }
+        pr.setTransferCar(partner);
+        elevators[partner].reserveTransfer();
+    }
+
+    private void refreshCars() {
+        createCars();
+        for (int i = 1; i < cars.length; i++) {
+            cars[i].refresh();
+        }
+    }
+
+    private void createCars() {
+        if (cars == null) {
+            cars = new CarState[elevators.length];
+            for (int i = 1; i < elevators.length; i++) {
+                cars[i] = new CarState(elevators[i], policy.getSpareLoad());
+            }
+        }
+    }
+
+    private DemandForecast forecast() {
+        if (forecast == null) {
+            forecast = new DemandForecast(elevators[1].getBuilding(), policy.getParkWindow());
+        }
+        return forecast;
+    }
+
+    // 调度空闲电梯：按预测需求从高到低依次为楼层挑选最近的空闲电梯，已选楼层附近一个分区内
+    // 不再重复停靠，使空闲电梯分散在各个分区；输入结束后不再停靠，免得增加运行时间与电耗。
+    // 返回是否发出了停靠命令
+    private boolean park() {
+        if (!policy.parksIdleCars()) {
+            return false;
+        }
+        List<Integer> idle = new ArrayList<>();
+        for (int i = 1; i < cars.length; i++) {
+            if (cars[i].isIdle()) {
+                idle.add(i);
+            }
+        }
+        if (idle.isEmpty()) {
+            return false;
+        }
+        int[] target = new int[cars.length];
+        if (!inputIsEnd) {
+            Building building = elevators[1].getBuilding();
+            int[] demand = forecast().predict(clock.now());
+            Integer[] floors = new Integer[demand.length];
+            for (int s = 0; s < demand.length; s++) {
+                floors[s] = s;
+            }
+            Arrays.sort(floors, Comparator.comparingInt((Integer s) -> demand[s]).reversed());
+            // 分区半径：电梯平均分担楼层时每部负责的层数的一半
+            int radius = building.floorSlots() / (2 * (cars.length - 1));
+            List<Integer> chosen = new ArrayList<>();
+            for (int k = 0; k < floors.length && chosen.size() < idle.size(); k++) {
+                int floor = floors[k] + building.getMinFloor();
+                if (demand[floors[k]] == 0) {
+                    break;
+                }
+                if (floor == 0 || coveredBy(chosen, floor, radius)) {
+                    continue;
                 }
-                TimableOutput.println(String.format("UPDATE-END-%d-%d",
-                    ur.getElevatorAId(), ur.getElevatorBId()));
-                elevators[ur.getElevatorAId()].updateDone();
-                elevators[ur.getElevatorBId()].updateDone();
-            });
-            futures.add(future);
-        }
-        // 分配给最近的空闲电梯
-        if (!unDispatchQueue.isEmpty()) {
-            PersonRequest pr = unDispatchQueue.peek();
-            int target1 = 0;
-            for (int i = 1; i <= 6; i++) {
-                if (!elevators[i].getRequestQueue().hasSche() &&
-                    elevators[i].getRequestQueue().getRequestsQueue().size() < 10 &&
-                    elevators[i].canDispatch() && elevators[i].canArriveAt(nowFloorMap.get(pr))) {
-                    if (target1 != 0) {
-                        if (Math.abs(elevators[i].getCurFloor() - intOf(pr.getFromFloor())) <
-                            Math.abs(elevators[target1].getCurFloor() - intOf(pr.getFromFloor()))) {
-                            target1 = i;
-                        }
-                    } else {
-                        target1 = i;
+                int best = 0;
+                for (int i : idle) {
+                    if (target[i] == 0 && cars[i].canParkAt(floor) && (best == 0 ||
+                        Floors.distance(cars[i].getFloor(), floor) <
+                            Floors.distance(cars[best].getFloor(), floor))) {
+                        best = i;
                     }
                 }
+                if (best != 0) {
+                    target[best] = floor;
+                    chosen.add(floor);
+                }
             }
-            int target2 = searchTarget2(pr);
-            if (target1 == 0 && target2 == 0) {
-                allElevatorsBusy = true;
-                return;
-            }
-            int target = target2 == 0 ? target1 : target2;
-            TimableOutput.println(
-                String.format("RECEIVE-%d-%d", pr.getPersonId(), elevators[target].getId()));
-            elevators[target].getRequestQueue().offer(unDispatchQueue.poll(), nowFloorMap.get(pr));
-        }
-        notifyAll();
-    }
-
-    private int searchTarget2(PersonRequest pr) {
-        int target2 = 0;
-        for (int i = 1; i <= 6; i++) {
-            if (!elevators[i].getRequestQueue().hasSche() &&
-                elevators[i].getRequestQueue().getRequestsQueue().size() < 10 &&
-                elevators[i].canDispatch() &&
-                elevators[i].canArriveAt(nowFloorMap.get(pr)) &&
-                elevators[i].canArriveTargetOf(pr)) {
-                if (target2 != 0) {
-                    target2 = i;
-                } else {
-                    target2 = i;
-                    break;
+        }
+        boolean sent = false;
+        for (int i : idle) {
+            if (target[i] != parkSent[i]) {
+                parkSent[i] = target[i];
+                elevators[i].park(target[i]);
+                sent = true;
+            }
+        }
+        return sent;
+    }
+
+    private static boolean coveredBy(List<Integer> chosen, int floor, int radius) {
+        for (int other : chosen) {
+            if (Floors.distance(other, floor) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 虚拟时钟模式下由 Simulation 在状态变化后调用，相当于分配线程的一次循环
+    public void dispatchPass() {
+        lock.lock();
+        try {
+            stateChanged = false;
+            if (isEnd() && isEmpty()) {
+                for (int i = 1; i < elevators.length; i++) {
+                    elevators[i].end();
                 }
+            } else {
+                dispatch();
             }
+        } finally {
+            lock.unlock();
         }
-        return target2;
     }
 
-    private static int intOf(String floor) {
-        if (floor.startsWith("B")) {
-            return (-Integer.parseInt(floor.substring(1)));
-        } else {
-            return (Integer.parseInt(floor.substring(1)));
+    // 检查点：改造任务由调用方统一写出，这里只写 A 电梯编号
+    public void collectUpdates(Map<Integer, UpdateTask> tasks) {
+        lock.lock();
+        try {
+            for (UpdateTask task : unDispatchUpdate) {
+                tasks.putIfAbsent(task.getRequest().getElevatorAId(), task);
+            }
+            for (UpdateTask task : pendingUpdates) {
+                tasks.putIfAbsent(task.getRequest().getElevatorAId(), task);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        lock.lock();
+        try {
+            out.writeBoolean(stateChanged);
+            out.writeInt(personRequestReceive);
+            out.writeInt(personRequestArrive);
+            out.writeBoolean(inputIsEnd);
+            out.writeBoolean(allElevatorsBusy);
+            out.writeInt(unDispatchQueue.size());
+            for (Passenger passenger : unDispatchQueue) {
+                passenger.save(out);
+            }
+            out.writeInt(unDispatchSche.size());
+            for (ScheRequest sr : unDispatchSche) {
+                Checkpoint.writeRequest(out, sr);
+            }
+            writeUpdates(out, unDispatchUpdate);
+            writeUpdates(out, pendingUpdates);
+            for (int i = 1; i < parkSent.length; i++) {
+                out.writeInt(parkSent[i]);
+            }
+            out.writeBoolean(forecast != null);
+            if (forecast != null) {
+                forecast.save(out);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeUpdates(DataOutputStream out, Collection<UpdateTask> updates)
+        throws IOException {
+        out.writeInt(updates.size());
+        for (UpdateTask task : updates) {
+            out.writeInt(task.getRequest().getElevatorAId());
+        }
+    }
+
+    // 须在电梯全部恢复后调用：在途的分配取自电梯邮箱中尚未处理的分配命令
+    public void restore(DataInputStream in, Map<Integer, UpdateTask> tasks) throws IOException {
+        lock.lock();
+        try {
+            stateChanged = in.readBoolean();
+            personRequestReceive = in.readInt();
+            personRequestArrive = in.readInt();
+            inputIsEnd = in.readBoolean();
+            allElevatorsBusy = in.readBoolean();
+            // 按堆数组的顺序逐个加入，得到相同的堆，同优先级的乘客出队顺序不变
+            for (int n = in.readInt(); n > 0; n--) {
+                unDispatchQueue.offer(Passenger.restore(in));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                unDispatchSche.offer((ScheRequest) Checkpoint.readRequest(in));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                unDispatchUpdate.add(tasks.get(in.readInt()));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                pendingUpdates.add(tasks.get(in.readInt()));
+            }
+            for (int i = 1; i < parkSent.length; i++) {
+                parkSent[i] = in.readInt();
+            }
+            if (in.readBoolean()) {
+                forecast().restore(in);
+            }
+            createCars();
+            for (int i = 1; i < cars.length; i++) {
+                cars[i].restoreInFlight(elevators[i].pendingAssignments());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<UpdateTask> takeReadyUpdates() {
+        lock.lock();
+        try {
+            List<UpdateTask> ready = new ArrayList<>();
+            pendingUpdates.removeIf(task -> task.isReady() && ready.add(task));
+            return ready;
+        } finally {
+            lock.unlock();
         }
     }
 
     public void run() {
         while (true) {
-            // TimableOutput.println(personRequestArrive + " " + personRequestReceive);
-            // 输入未结束，还有可能获取请求
-            while (isEmpty() && !isEnd()) {
-                try {
-                    dispatchWait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            // 所有电梯处于忙碌状态，但是还有未分配请求，等待空闲电梯
-            while (allElevatorsBusy && !isEmpty()) {
-                synchronized (busyLock) {
-                    //TimableOutput.println("all elevators busy!!!!!!!!!!!!!!!!!!!!!!!!!!");
+            lock.lock();
+            try {
+                // 先置位再检查输入队列，与 inputArrived 先入队再读取 idle 配合，不会错过新输入
+                boolean waited = false;
+                while (!stateChanged) {
+                    idle = true;
+                    if (input != null && input.hasPending()) {
+                        break;
+                    }
+                    if (waited) {
+                        metrics.dispatchSpuriousWakeup();
+                    }
                     try {
-                        busyLock.wait();
+                        changed.await();
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
                     }
+                    waited = true;
                 }
-            }
-            // 输入结束，且没有未分配队列，告知电梯的已分配队列不会再有来自dispatch的分配
-
-            if (isEnd() && isEmpty()) {
-                for (int i = 1; i <= 6; i++) {
-                    elevators[i].getRequestQueue().setEnd();
+                idle = false;
+                if (waited) {
+                    metrics.dispatchWakeup();
                 }
-                //TimableOutput.println("begin fget");
-                for (Future<?> f : futures) {
-                    try {
-                        f.get();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+                if (input != null) {
+                    input.drainTo(this);
+                }
+                stateChanged = false;
+                // 输入结束，且没有未分配队列，告知电梯的已分配队列不会再有来自dispatch的分配
+                if (!isEnd() || !isEmpty()) {
+                    if (!dispatch() && waited) {
+                        metrics.dispatchUselessWakeup();
                     }
+                    continue;
                 }
-                //TimableOutput.println("end fget");
-                executor.shutdown();
-                break;
+                for (int i = 1; i < elevators.length; i++) {
+                    elevators[i].end();
+                }
+            } finally {
+                lock.unlock();
             }
-            try {
-                dispatch();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            // 等待改造任务结束时不能持有锁，改造结束需要回调 hasFreeElevator
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (executor != null) {
+                executor.shutdown();
             }
+            break;
         }
     }
 }
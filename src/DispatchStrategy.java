@@ -0,0 +1,20 @@
+public interface DispatchStrategy {
+    // 为乘客选择电梯，返回其在 cars 中的下标，没有可用电梯时返回 0
+    int select(Passenger passenger, CarState[] cars);
+
+    // 是否尽量不让空车移动：不调度空闲电梯去停靠或到换乘层旁待命，接客时先去最近的候梯楼层
+    default boolean avoidsEmptyMoves() {
+        return false;
+    }
+
+    // 通过 -Delevator.strategy 在启动时选择，默认按预计到达时间分配
+    static DispatchStrategy of(String name) {
+        if ("nearest".equals(name)) {
+            return new NearestStrategy();
+        }
+        if ("energy".equals(name)) {
+            return EnergyStrategy.fromProperties();
+        }
+        return new EtaStrategy();
+    }
+}
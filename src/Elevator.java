@@ -1,67 +1,429 @@
-import com.oocourse.elevator3.PersonRequest;
 import com.oocourse.elevator3.ScheRequest;
-import com.oocourse.elevator3.TimableOutput;
 import com.oocourse.elevator3.UpdateRequest;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// 电梯的状态只由自己的线程读写：其他线程通过邮箱投递命令，通过发布的快照读取状态
 public class Elevator implements Runnable {
     private final int id;
-    private int curFloor = 1;
+    private int curFloor;
     private final RequestQueue requestQueue;
-    private final Queue<PersonRequest> insideQueue;
-    private static final int capacity = 6;
-    private volatile boolean inSchedule = false;
-    private final Object scheduleLock = new Object();
+    private final CabinLoad insideQueue;
+    private final Building building;
+    private final int capacity;
+    private final int rearrangeFactor;
+    private boolean inSchedule = false;
     private int targetScheFloor;
-    private static final long defaultTimePerFloor = 400;
-    private long timePerFloor = 400;
-    private static long timeStop = 1000;
+    private final long defaultTimePerFloor;
+    private long timePerFloor;
+    private static final long timeStop = 1000;
     private static final long minTimeOpen2Close = 400; // 400ms
     private final Dispatch dispatch;
     private final Elevator[] elevators;
+    private UpdateTask updateTask;
     private UpdateRequest ur;
     private boolean updateHasBegin = false;
     private boolean afterUpdate = false;
-    private final Object updateLock = new Object();
     private int partnerElevatorId = 0;
     private int transferFloor = 0;
-    private int limitMaxFloor = 7;
-    private int limitMinFloor = -4;
+    private int limitMaxFloor;
+    private int limitMinFloor;
+    // 本电梯持有换乘层的占用令牌：驶入换乘层前取得，离开后归还
+    private TransferToken transferToken;
     private boolean transferFloorIsOccupied = false;
     private boolean hasAcceptUpdate;
     private boolean inUpdate;
-
-    public Elevator(int id, Dispatch dispatch, Elevator[] elevators) {
+    private final SimClock clock;
+    private final Metrics metrics;
+    private final CarMetrics carMetrics;
+    // 最近一次移动的方向（1 向上，-1 向下，0 停靠等待），供分配估算到达时间
+    private int direction = 0;
+    private final Mailbox<Command> mailbox = new Mailbox<>();
+    private volatile ElevatorSnapshot snapshot;
+    // 已处理的分配命令数随快照发布，分配线程据此找出仍在途中的分配
+    private long assignsApplied = 0;
+    // 已投递但尚未体现在快照中的临时调度/改造命令数，期间分配线程视电梯为不可用
+    private final AtomicInteger pendingHold = new AtomicInteger();
+    private int heldSincePublish = 0;
+    // 发布快照后才通知其他线程，保证对方醒来时读到的是新快照
+    private boolean freed = false;
+    private boolean becameAvailable = false;
+    // 空闲时要停靠的楼层，由分配线程按需求预测指定，0 表示原地等待；有了新任务即取消
+    private int parkFloor = 0;
+    private final boolean parking;
+    private final boolean staging;
+    // 节能分配时空车接客先去最近的候梯楼层
+    private final boolean avoidsEmptyMoves;
+    // 新建的电梯视为已空闲，第一个请求到达后的分配轮次才安排停靠
+    private boolean publishedIdle = true;
+    // 搭档电梯将送到换乘层、已预留由本电梯接走的乘客数，开启 -Delevator.stage 时大于 0 的空闲电梯在换乘层旁等候
+    private int stagedTransfers = 0;
+    // 进行中的定时动作，等待结束后执行，没有时为 null
+    private TimedAction pendingAction;
+
+    public Elevator(int id, Dispatch dispatch, Elevator[] elevators, SimClock clock,
+        Building building) {
         this.id = id;
         this.dispatch = dispatch;
-        this.requestQueue = new RequestQueue();
+        this.clock = clock;
+        this.metrics = dispatch.getMetrics();
+        this.carMetrics = metrics.car(id);
+        this.building = building;
+        this.capacity = building.getCapacity();
+        this.rearrangeFactor = dispatch.getPolicy().getRearrangeFactor();
+        this.parking = dispatch.getPolicy().parksIdleCars();
+        this.staging = dispatch.getPolicy().stagesTransfers();
+        this.avoidsEmptyMoves = dispatch.getPolicy().avoidsEmptyMoves();
+        this.defaultTimePerFloor = building.getTimePerFloor(id);
+        this.timePerFloor = defaultTimePerFloor;
+        this.curFloor = building.getStartFloor();
+        this.limitMaxFloor = building.getMaxFloor();
+        this.limitMinFloor = building.getMinFloor();
+        this.requestQueue = new RequestQueue(building);
         this.elevators = elevators;
-        this.insideQueue = new PriorityQueue<>(
-                Comparator.comparing(PersonRequest::getPriority));
+        this.insideQueue = new CabinLoad(building);
+        publish();
+    }
+
+    // 以下命令可由任意线程调用，在电梯自己的线程上按投递顺序执行
+    public void assign(Passenger passenger) {
+        mailbox.post(new Command(CommandKind.ASSIGN, passenger));
+    }
+
+    // 空闲时前往 floor 停靠，0 表示原地等待；命令到达前已有新任务时忽略
+    public void park(int floor) {
+        mailbox.post(new Command(CommandKind.PARK, floor));
+    }
+
+    // 搭档电梯载着需要换乘到本电梯的乘客，分配线程在分配第一程时预留第二程
+    public void reserveTransfer() {
+        mailbox.post(new Command(CommandKind.RESERVE_TRANSFER, null));
+    }
+
+    // 预留的乘客在途中被放下、重新交给分配线程，不会再送到换乘层
+    public void releaseTransfer() {
+        mailbox.post(new Command(CommandKind.RELEASE_TRANSFER, null));
+    }
+
+    // 搭档电梯在换乘层放下了预留的乘客，直接由本电梯接走，不经过分配线程
+    public void takeOver(Passenger passenger) {
+        mailbox.post(new Command(CommandKind.TAKE_OVER, passenger));
+    }
+
+    public void schedule(ScheRequest sr) {
+        pendingHold.incrementAndGet();
+        mailbox.post(new Command(CommandKind.SCHEDULE, sr));
+    }
+
+    public void acceptUpdate(UpdateTask task) {
+        pendingHold.incrementAndGet();
+        mailbox.post(new Command(CommandKind.ACCEPT_UPDATE, task));
+    }
+
+    public void updateDone() {
+        mailbox.post(new Command(CommandKind.UPDATE_DONE, null));
+    }
+
+    // 搭档离开了换乘层并归还了令牌，本电梯正登记等着进入
+    public void transferFreed() {
+        mailbox.post(new Command(CommandKind.TRANSFER_FREED, null));
+    }
+
+    public void end() {
+        mailbox.post(new Command(CommandKind.END, null));
+    }
+
+    private void apply(Command command) {
+        switch (command.kind) {
+            case ASSIGN:
+                requestQueue.offer((Passenger) command.arg);
+                assignsApplied++;
+                parkFloor = 0;
+                break;
+            case PARK:
+                if (isIdle()) {
+                    parkFloor = (Integer) command.arg;
+                }
+                break;
+            case RESERVE_TRANSFER:
+                stagedTransfers++;
+                break;
+            case RELEASE_TRANSFER:
+                stagedTransfers--;
+                break;
+            case TAKE_OVER:
+                stagedTransfers--;
+                requestQueue.offer((Passenger) command.arg);
+                parkFloor = 0;
+                break;
+            case SCHEDULE:
+                requestQueue.offer((ScheRequest) command.arg);
+                parkFloor = 0;
+                heldSincePublish++;
+                break;
+            case ACCEPT_UPDATE:
+                updateTask = (UpdateTask) command.arg;
+                ur = updateTask.getRequest();
+                hasAcceptUpdate = true;
+                parkFloor = 0;
+                heldSincePublish++;
+                break;
+            case UPDATE_DONE:
+                afterUpdate = true;
+                hasAcceptUpdate = false;
+                becameAvailable = true;
+                break;
+            case END:
+                requestQueue.setEnd();
+                break;
+            default:
+                break;
+        }
     }
 
-    public boolean transferFloorIsFree() {
-        return !elevators[partnerElevatorId].getTransferFloorIsOccupied();
+    public ElevatorSnapshot getSnapshot() {
+        return snapshot;
     }
 
-    public boolean getTransferFloorIsOccupied() {
-        return transferFloorIsOccupied;
+    public boolean hasPendingHold() {
+        return pendingHold.get() > 0;
     }
 
     public int getId() {
         return id;
     }
 
-    public RequestQueue getRequestQueue() {
+    public Building getBuilding() {
+        return building;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private RequestQueue getRequestQueue() {
         return requestQueue;
     }
 
-    public int getCurFloor() {
-        return curFloor;
+    private boolean transferFloorIsFree() {
+        return transferToken.checkFree(id);
+    }
+
+    // 以下用于检查点，只在虚拟时钟模式下、两个事件之间调用。进行中的动作只记下种类（pendingAction），
+    // 由 Simulation 按事件队列中的到期时间重新登记；邮箱中尚未处理的命令按投递顺序写出
+    public void collectUpdates(Map<Integer, UpdateTask> tasks) {
+        if (updateTask != null) {
+            tasks.putIfAbsent(updateTask.getRequest().getElevatorAId(), updateTask);
+        }
+        for (Command command : mailbox.pending()) {
+            if (command.kind == CommandKind.ACCEPT_UPDATE) {
+                UpdateTask task = (UpdateTask) command.arg;
+                tasks.putIfAbsent(task.getRequest().getElevatorAId(), task);
+            }
+        }
+    }
+
+    // 已投递、尚未处理的分配，分配线程恢复在途的分配时使用
+    public List<Passenger> pendingAssignments() {
+        List<Passenger> passengers = new ArrayList<>();
+        for (Command command : mailbox.pending()) {
+            if (command.kind == CommandKind.ASSIGN) {
+                passengers.add((Passenger) command.arg);
+            }
+        }
+        return passengers;
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(curFloor);
+        out.writeInt(direction);
+        out.writeLong(timePerFloor);
+        out.writeBoolean(inSchedule);
+        out.writeInt(targetScheFloor);
+        out.writeBoolean(hasAcceptUpdate);
+        out.writeBoolean(updateHasBegin);
+        out.writeBoolean(inUpdate);
+        out.writeBoolean(afterUpdate);
+        out.writeInt(partnerElevatorId);
+        out.writeInt(transferFloor);
+        out.writeInt(limitMinFloor);
+        out.writeInt(limitMaxFloor);
+        out.writeBoolean(transferFloorIsOccupied);
+        out.writeInt(parkFloor);
+        out.writeInt(stagedTransfers);
+        out.writeBoolean(publishedIdle);
+        out.writeLong(assignsApplied);
+        out.writeInt(updateTask == null ? 0 : updateTask.getRequest().getElevatorAId());
+        out.writeByte(pendingAction == null ? -1 : pendingAction.ordinal());
+        requestQueue.save(out);
+        insideQueue.save(out);
+        List<Command> commands = mailbox.pending();
+        out.writeInt(commands.size());
+        for (Command command : commands) {
+            out.writeByte(command.kind.ordinal());
+            switch (command.kind) {
+                case ASSIGN:
+                case TAKE_OVER:
+                    ((Passenger) command.arg).save(out);
+                    break;
+                case PARK:
+                    out.writeInt((Integer) command.arg);
+                    break;
+                case SCHEDULE:
+                    Checkpoint.writeRequest(out, (ScheRequest) command.arg);
+                    break;
+                case ACCEPT_UPDATE:
+                    out.writeInt(((UpdateTask) command.arg).getRequest().getElevatorAId());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    // tasks 为检查点中的改造任务，按 A 电梯编号索引
+    public void restore(DataInputStream in, Map<Integer, UpdateTask> tasks) throws IOException {
+        curFloor = in.readInt();
+        direction = in.readInt();
+        timePerFloor = in.readLong();
+        inSchedule = in.readBoolean();
+        targetScheFloor = in.readInt();
+        hasAcceptUpdate = in.readBoolean();
+        updateHasBegin = in.readBoolean();
+        inUpdate = in.readBoolean();
+        afterUpdate = in.readBoolean();
+        partnerElevatorId = in.readInt();
+        transferFloor = in.readInt();
+        limitMinFloor = in.readInt();
+        limitMaxFloor = in.readInt();
+        transferFloorIsOccupied = in.readBoolean();
+        parkFloor = in.readInt();
+        stagedTransfers = in.readInt();
+        publishedIdle = in.readBoolean();
+        assignsApplied = in.readLong();
+        updateTask = tasks.get(in.readInt());
+        if (updateTask != null) {
+            ur = updateTask.getRequest();
+            if (afterUpdate) {
+                transferToken = updateTask.getToken();
+            }
+        }
+        int action = in.readByte();
+        pendingAction = action < 0 ? null : TimedAction.values()[action];
+        requestQueue.restore(in);
+        insideQueue.restore(in);
+        CommandKind[] kinds = CommandKind.values();
+        int holds = 0;
+        for (int n = in.readInt(); n > 0; n--) {
+            CommandKind kind = kinds[in.readByte()];
+            Object arg = null;
+            switch (kind) {
+                case ASSIGN:
+                case TAKE_OVER:
+                    arg = Passenger.restore(in);
+                    break;
+                case PARK:
+                    arg = in.readInt();
+                    break;
+                case SCHEDULE:
+                    arg = Checkpoint.readRequest(in);
+                    holds++;
+                    break;
+                case ACCEPT_UPDATE:
+                    arg = tasks.get(in.readInt());
+                    holds++;
+                    break;
+                default:
+                    break;
+            }
+            mailbox.post(new Command(kind, arg));
+        }
+        pendingHold.set(holds);
+        // 只重建快照，不像 publish 那样通知分配线程，分配线程的状态另行恢复
+        snapshot = takeSnapshot();
+    }
+
+    private void receive() {
+        boolean received = false;
+        for (Command command = mailbox.poll(); command != null; command = mailbox.poll()) {
+            apply(command);
+            received = true;
+        }
+        if (received) {
+            publish();
+        }
+    }
+
+    private ElevatorSnapshot takeSnapshot() {
+        boolean[] stops = new boolean[building.floorSlots()];
+        insideQueue.markStops(stops);
+        requestQueue.markWaitingFloors(stops);
+        return new ElevatorSnapshot(!requestQueue.hasSche() && canDispatch(),
+            requestQueue.size(), insideQueue.size(), curFloor, direction, timePerFloor,
+            limitMinFloor, limitMaxFloor, transferFloor, partnerElevatorId, stops,
+            assignsApplied, parkFloor);
+    }
+
+    private void publish() {
+        snapshot = takeSnapshot();
+        pendingHold.addAndGet(-heldSincePublish);
+        heldSincePublish = 0;
+        // 刚空闲下来时请分配线程安排停靠
+        boolean idle = parking && isIdle() && canDispatch();
+        if (idle && !publishedIdle) {
+            becameAvailable = true;
+        }
+        publishedIdle = idle;
+        if (becameAvailable || freed && dispatch.allElevatorsBusy()) {
+            dispatch.hasFreeElevator();
+        }
+        freed = false;
+        becameAvailable = false;
+    }
+
+    // 等待一段时间后执行 action，等待前后各发布一次快照
+    private void later(long millis, TimedAction action) {
+        carMetrics.busy(millis);
+        pendingAction = action;
+        publish();
+        clock.delay(millis, this::resume);
+    }
+
+    // 等待结束后执行记下的动作；从检查点恢复时由 Simulation 按到期时间重新登记
+    public void resume() {
+        TimedAction action = pendingAction;
+        pendingAction = null;
+        switch (action) {
+            case ARRIVE:
+                arrive();
+                break;
+            case CLOSE:
+                clock.log(EventType.CLOSE, curFloor, id, 0);
+                break;
+            case SCHE_CLOSE:
+                clock.log(EventType.CLOSE, curFloor, id, 0);
+                scheduleEnd();
+                break;
+            case UPDATE_CLOSE:
+                allPersonOut();
+                clock.log(EventType.CLOSE, curFloor, id, 0);
+                waitUpdateEnd();
+                break;
+            case UPDATE_END:
+                updateParam();
+                removeAllReceive();
+                inUpdate = false;
+                break;
+            default:
+                break;
+        }
+        publish();
     }
 
     private boolean canOpen() {
@@ -97,12 +459,13 @@ public class Elevator implements Runnable {
     }
 
     public void removeAllReceive() {
-        while (!getRequestQueue().getRequestsQueue().isEmpty()) {
-            dispatch.offer(getRequestQueue().poll(), false, false, 0);
+        List<Passenger> pending = requestQueue.takeAll();
+        if (!pending.isEmpty()) {
+            dispatch.offerAll(pending);
         }
     }
 
-    private synchronized void modifyFloor(boolean add, boolean dec, boolean modify, int floor) {
+    private void modifyFloor(boolean add, boolean dec, boolean modify, int floor) {
         if (add) {
             curFloor++;
             if (curFloor == 0) {
@@ -119,91 +482,46 @@ public class Elevator implements Runnable {
     }
 
     public void updateParam() {
+        int transfer = Floors.parse(ur.getTransferFloor());
         if (id == ur.getElevatorAId()) {
-            int modifiedFloor =  intOf(ur.getTransferFloor()) == -1 ?
-                1 : intOf(ur.getTransferFloor()) + 1;
-            modifyFloor(false, false, true, modifiedFloor);
-            limitMinFloor = intOf(ur.getTransferFloor());
+            modifyFloor(false, false, true, transfer == -1 ? 1 : transfer + 1);
+            limitMinFloor = transfer;
         } else {
-            int modifiedFloor =  intOf(ur.getTransferFloor()) == 1 ?
-                -1 : intOf(ur.getTransferFloor()) - 1;
-            modifyFloor(false, false, true, modifiedFloor);
-            limitMaxFloor = intOf(ur.getTransferFloor());
+            modifyFloor(false, false, true, transfer == 1 ? -1 : transfer - 1);
+            limitMaxFloor = transfer;
         }
-        transferFloor = intOf(ur.getTransferFloor());
+        transferFloor = transfer;
+        transferToken = updateTask.getToken();
         partnerElevatorId = (id == ur.getElevatorAId()) ? ur.getElevatorBId() : ur.getElevatorAId();
-        timePerFloor = 200;
+        // 改造后速度翻倍
+        timePerFloor = defaultTimePerFloor / 2;
     }
 
     public boolean canArriveAt(int floor) {
         return floor >= limitMinFloor && floor <= limitMaxFloor;
     }
 
-    public boolean canArriveTargetOf(PersonRequest pr) {
-        return intOf(pr.getToFloor()) >= limitMinFloor && intOf(pr.getToFloor()) <= limitMaxFloor;
-    }
-
-    public void updateDone() {
-        synchronized (updateLock) {
-            afterUpdate = true;
-            hasAcceptUpdate = false;
-            dispatch.hasFreeElevator();
-            updateLock.notifyAll();
-        }
-    }
-
-    public synchronized void scheduleStart(ScheRequest sr) {
-        synchronized (scheduleLock) {
-            inSchedule = true;
-            TimableOutput.println(String.format("SCHE-BEGIN-%d", id));
-            timePerFloor = (long) (sr.getSpeed() * 1000);
-            targetScheFloor = intOf(sr.getToFloor());
-            removeAllReceive();
-            scheduleLock.notifyAll();
-        }
-    }
-
-    public synchronized void scheduleEnd() {
-        synchronized (scheduleLock) {
-            TimableOutput.println(String.format("SCHE-END-%d", id));
-            inSchedule = false;
-            requestQueue.scheEnd();
-            dispatch.hasScheEnd();
-            timePerFloor = defaultTimePerFloor;
-            if (dispatch.allElevatorsBusy()) {
-                dispatch.hasFreeElevator();
-            }
-            scheduleLock.notifyAll();
-        }
+    public boolean canArriveTargetOf(Passenger pr) {
+        return pr.getToFloor() >= limitMinFloor && pr.getToFloor() <= limitMaxFloor;
     }
 
-    private synchronized double getInsideUpPri() {
-        double sum = 0;
-        for (PersonRequest insidePr : insideQueue) {
-            if (intOf(insidePr.getToFloor()) > curFloor) {
-                int floorDiff = intOf(insidePr.getToFloor()) > 0 && curFloor < 0 ?
-                    intOf(insidePr.getToFloor()) - curFloor - 1 :
-                    intOf(insidePr.getToFloor()) - curFloor;
-                sum += (double) insidePr.getPriority() / (double) floorDiff;
-            }
-        }
-        return sum;
+    private void scheduleStart(ScheRequest sr) {
+        inSchedule = true;
+        clock.log(EventType.SCHE_BEGIN, id, 0, 0);
+        timePerFloor = (long) (sr.getSpeed() * 1000);
+        targetScheFloor = Floors.parse(sr.getToFloor());
+        removeAllReceive();
     }
 
-    private synchronized double getInsideDownPri() {
-        double sum = 0;
-        for (PersonRequest insidePr : insideQueue) {
-            if (intOf(insidePr.getToFloor()) < curFloor) {
-                int floorDiff = curFloor > 0 && intOf(insidePr.getToFloor()) < 0 ?
-                    curFloor - intOf(insidePr.getToFloor()) - 1 :
-                    curFloor - intOf(insidePr.getToFloor());
-                sum += (double) insidePr.getPriority() / (double) floorDiff;
-            }
-        }
-        return sum;
+    private void scheduleEnd() {
+        clock.log(EventType.SCHE_END, id, 0, 0);
+        inSchedule = false;
+        requestQueue.scheEnd();
+        timePerFloor = defaultTimePerFloor;
+        becameAvailable = true;
     }
 
-    private synchronized Status update() {
+    private Status update() {
         if (inSchedule) {
             if (targetScheFloor > curFloor && canMove()) {
                 return Status.MOVE;
@@ -221,280 +539,343 @@ public class Elevator implements Runnable {
                 return Status.WAIT;
             }
         }
-        if (insideQueue.isEmpty()) {
-            if (requestQueue.isEmpty()) {
-                if (curFloor == transferFloor) {
-                    if (canMove()) {
-                        return Status.MOVE;
-                    } else if (canReverse()) {
-                        return Status.REVERSE;
-                    }
-                }
-                return Status.WAIT;
-            } else {
-                return updateDirection();
+        if (!insideQueue.isEmpty() || !requestQueue.isEmpty()) {
+            Status planned = look();
+            if (planned != Status.WAIT) {
+                return planned;
             }
-        } else {
-            if (Double.compare(getInsideUpPri(), getInsideDownPri()) >= 0 && canMove()) {
+        }
+        if (curFloor == transferFloor) {
+            if (canMove()) {
                 return Status.MOVE;
             } else if (canReverse()) {
                 return Status.REVERSE;
-            } else {
-                if (curFloor == transferFloor) {
-                    if (canMove()) {
-                        return Status.MOVE;
-                    } else if (canReverse()) {
-                        return Status.REVERSE;
-                    }
-                }
-                return Status.WAIT;
             }
         }
-    }
-
-    private synchronized boolean hasPersonOut() {
-        for (PersonRequest pr : insideQueue) {
-            if ((afterUpdate && curFloor == transferFloor && !canArriveTargetOf(pr)) ||
-                intOf(pr.getToFloor()) == curFloor) {
-                return true;
+        if (needsStaging()) {
+            int stagingFloor = stagingFloor();
+            if (stagingFloor > curFloor && canMove()) {
+                return Status.MOVE;
+            } else if (stagingFloor < curFloor && canReverse()) {
+                return Status.REVERSE;
             }
         }
-        return false;
+        if (needsParking()) {
+            if (parkFloor > curFloor && canMove()) {
+                return Status.MOVE;
+            } else if (parkFloor < curFloor && canReverse()) {
+                return Status.REVERSE;
+            }
+        }
+        return Status.WAIT;
     }
 
-    private synchronized boolean hasPersonInButFull() {
-        return requestQueue.getRequestsAt(curFloor) != null && insideQueue.size() == capacity &&
-                !requestQueue.getRequestsAt(curFloor).isEmpty();
+    private boolean isIdle() {
+        return requestQueue.isEmpty() && insideQueue.isEmpty() && !inSchedule;
     }
 
-    private synchronized boolean hasPersonIn() {
-        return requestQueue.getRequestsAt(curFloor) != null
-                && !requestQueue.getRequestsAt(curFloor).isEmpty() && insideQueue.size() < capacity;
+    private boolean needsParking() {
+        return parkFloor != 0 && parkFloor != curFloor && isIdle() && stagedTransfers == 0;
     }
 
-    private Status updateDirection() {
-        int nextFloor = requestQueue.nextTargetFloor(curFloor, this);
-        return nextFloor > curFloor && canMove() ? Status.MOVE :
-                nextFloor == curFloor ? Status.WAIT :
-                canReverse() ? Status.REVERSE : Status.WAIT;
+    // 换乘层旁本电梯一侧的楼层：搭档放下乘客离开后只需一层就能接上
+    private int stagingFloor() {
+        if (limitMinFloor == transferFloor) {
+            return transferFloor == -1 ? 1 : transferFloor + 1;
+        }
+        return transferFloor == 1 ? -1 : transferFloor - 1;
     }
 
-    private final Object clearInsideLock = new Object();
+    private boolean needsStaging() {
+        return staging && stagedTransfers > 0 && afterUpdate &&
+            curFloor != stagingFloor() && curFloor != transferFloor && isIdle();
+    }
 
-    public void wait2clearInside() throws InterruptedException {
-        synchronized (clearInsideLock) {
-            while (!insideQueue.isEmpty() || !inUpdate) {
-                clearInsideLock.wait();
-            }
+    // LOOK：沿上一次移动的方向还有停靠点（轿厢内的目的楼层或已分配的候梯楼层）就继续前进，
+    // 该方向的停靠点都服务完才掉头；停靠点随上下客与分配增减，每层只需查一次两个方向
+    private Status look() {
+        int heading = direction;
+        if (heading == 0) {
+            heading = initialDirection();
+        }
+        boolean up = hasStopBeyond(1);
+        boolean down = hasStopBeyond(-1);
+        if (heading > 0 ? up && canMove() : down && canReverse()) {
+            return heading > 0 ? Status.MOVE : Status.REVERSE;
         }
+        if (up && canMove()) {
+            return Status.MOVE;
+        } else if (down && canReverse()) {
+            return Status.REVERSE;
+        }
+        return Status.WAIT;
     }
 
-    public boolean canDispatch() {
-        return (!updateHasBegin || afterUpdate) && !inUpdate && !hasAcceptUpdate;
+    // 停靠后重新出发时按原先的打分选择方向：有乘客时比较两个方向的 优先级/距离，否则去优先级更高的候梯楼层
+    private int initialDirection() {
+        if (!insideQueue.isEmpty()) {
+            return Double.compare(insideQueue.getUpScore(curFloor),
+                insideQueue.getDownScore(curFloor)) >= 0 ? 1 : -1;
+        }
+        int target = avoidsEmptyMoves ? requestQueue.nearestTargetFloor(curFloor, this) :
+            requestQueue.nextTargetFloor(curFloor, this);
+        return Integer.signum(target - curFloor);
     }
 
-    public void insideHasClear() {
-        synchronized (clearInsideLock) {
-            clearInsideLock.notifyAll();
-        }
+    private boolean hasStopBeyond(int heading) {
+        return insideQueue.hasStopBeyond(curFloor, heading) ||
+            requestQueue.hasWaitingBeyond(curFloor, heading, this);
     }
 
-    public void acceptUpdate(UpdateRequest updateRequest) {
-        ur = updateRequest;
-        requestQueue.myNotify();
-        hasAcceptUpdate = true;
+    private boolean hasPersonOut() {
+        return insideQueue.hasStopAt(curFloor) || afterUpdate && curFloor == transferFloor &&
+            insideQueue.firstStopOutside(limitMinFloor, limitMaxFloor) != 0;
     }
 
-    private void executeUpdate() throws InterruptedException {
+    private boolean hasPersonInButFull() {
+        return requestQueue.hasRequestAt(curFloor) && insideQueue.size() == capacity;
+    }
+
+    private boolean hasPersonIn() {
+        return requestQueue.hasRequestAt(curFloor) && insideQueue.size() < capacity;
+    }
+
+    private boolean canDispatch() {
+        return (!updateHasBegin || afterUpdate) && !inUpdate && !hasAcceptUpdate;
+    }
+
+    private void executeUpdate() {
         inUpdate = true;
         updateHasBegin = true;
         if (!insideQueue.isEmpty()) {
-            TimableOutput.println(String.format("OPEN-%s-%d", formatFloor(curFloor), id));
-            Thread.sleep(minTimeOpen2Close);
-            allPersonOut();
-            TimableOutput.println(String.format("CLOSE-%s-%d", formatFloor(curFloor), id));
+            clock.log(EventType.OPEN, curFloor, id, 0);
+            carMetrics.doorOpened();
+            later(minTimeOpen2Close, TimedAction.UPDATE_CLOSE);
+        } else {
+            waitUpdateEnd();
         }
-        insideHasClear();
+    }
+
+    private void waitUpdateEnd() {
+        updateTask.insideCleared();
         hasAcceptUpdate = false;
-        Thread.sleep(1000);
-        updateParam();
-        removeAllReceive();
-        inUpdate = false;
+        later(1000, TimedAction.UPDATE_END);
     }
 
-    public void execute() throws InterruptedException {
+    public boolean execute() {
         if (inSchedule && curFloor == targetScheFloor) {
-            TimableOutput.println(String.format("OPEN-%s-%d", formatFloor(curFloor), id));
+            clock.log(EventType.OPEN, curFloor, id, 0);
+            carMetrics.doorOpened();
             allPersonOut();
-            Thread.sleep(timeStop);
-            TimableOutput.println(String.format("CLOSE-%s-%d", formatFloor(curFloor), id));
-            scheduleEnd();
-            return;
+            later(timeStop, TimedAction.SCHE_CLOSE);
+            return true;
         }
         Status status = update();
         if (status == Status.WAIT && curFloor == transferFloor && afterUpdate) {
             status = canMove() ? Status.MOVE : canReverse() ? Status.REVERSE : Status.WAIT;
         }
+        if (status == Status.MOVE || status == Status.REVERSE || status == Status.WAIT) {
+            direction = status == Status.MOVE ? 1 : status == Status.REVERSE ? -1 : 0;
+        }
         switch (status) {
             case UPDATE:
                 executeUpdate();
-                break;
+                return true;
             case OPEN:
-                if (!inSchedule) {
-                    TimableOutput.println(String.format("OPEN-%s-%d", formatFloor(curFloor), id));
-                    personOut();
-                    personIn();
-                    rearrange();
-                    Thread.sleep(minTimeOpen2Close);
-                    TimableOutput.println(String.format("CLOSE-%s-%d", formatFloor(curFloor), id));
+                if (inSchedule) {
+                    return false;
                 }
-                break;
+                clock.log(EventType.OPEN, curFloor, id, 0);
+                carMetrics.doorOpened();
+                personOut();
+                personIn();
+                rearrange();
+                later(minTimeOpen2Close, TimedAction.CLOSE);
+                return true;
             case MOVE:
-                if ((curFloor + 1 == 0 && curFloor + 2 == transferFloor) ||
-                    curFloor + 1 == transferFloor) {
-                    transferFloorIsOccupied = true;
+                if (!enterTransferFloor(curFloor == -1 ? 1 : curFloor + 1)) {
+                    return false;
                 }
                 modifyFloor(true, false, false, 0);
-                Thread.sleep(timePerFloor);
-                TimableOutput.println(String.format("ARRIVE-%s-%d", formatFloor(curFloor), id));
-                if (curFloor != transferFloor) {
-                    transferFloorIsOccupied = false;
-                }
-                break;
+                carMetrics.moved();
+                later(timePerFloor, TimedAction.ARRIVE);
+                return true;
             case REVERSE:
-                if ((curFloor - 1 == 0 && curFloor - 2 == transferFloor) ||
-                    curFloor - 1 == transferFloor) {
-                    transferFloorIsOccupied = true;
+                if (!enterTransferFloor(curFloor == 1 ? -1 : curFloor - 1)) {
+                    return false;
                 }
                 modifyFloor(false, true, false, 0);
-                Thread.sleep(timePerFloor);
-                TimableOutput.println(String.format("ARRIVE-%s-%d", formatFloor(curFloor), id));
-                if (curFloor != transferFloor) {
-                    transferFloorIsOccupied = false;
-                }
-                break;
+                carMetrics.moved();
+                later(timePerFloor, TimedAction.ARRIVE);
+                return true;
             default:
-                break;
+                return false;
         }
     }
 
-    private synchronized boolean needRearrange() {
-        if (hasPersonInButFull() && requestQueue.getRequestsAt(curFloor) != null &&
-            !requestQueue.getRequestsAt(curFloor).isEmpty()) {
-            return requestQueue.getRequestsAt(curFloor).peek().getPriority() >
-                    5 * insideQueue.peek().getPriority();
+    // 下一层是换乘层时须先取得令牌；搭档正占用时已登记等待，不产生动作，搭档离开后会收到 transferFreed
+    private boolean enterTransferFloor(int nextFloor) {
+        if (!afterUpdate || nextFloor != transferFloor) {
+            return true;
+        }
+        if (!transferToken.tryAcquire(id)) {
+            return false;
+        }
+        transferFloorIsOccupied = true;
+        return true;
+    }
+
+    private void arrive() {
+        clock.log(EventType.ARRIVE, curFloor, id, 0);
+        if (curFloor != transferFloor && transferFloorIsOccupied) {
+            transferFloorIsOccupied = false;
+            transferToken.release(id);
+        }
+    }
+
+    private boolean needRearrange() {
+        if (hasPersonInButFull()) {
+            return requestQueue.peekAt(curFloor).getPriority() >
+                    rearrangeFactor * insideQueue.peekLowest().getPriority();
         }
         return false;
     }
 
-    private synchronized void rearrange() {
-        if (hasPersonInButFull() && requestQueue.getRequestsAt(curFloor) != null &&
-            !requestQueue.getRequestsAt(curFloor).isEmpty()) {
-            while (requestQueue.getRequestsAt(curFloor) != null &&
-                    !requestQueue.getRequestsAt(curFloor).isEmpty() &&
-                    requestQueue.getRequestsAt(curFloor).peek().getPriority() >
-                            5 * insideQueue.peek().getPriority()) {
-                TimableOutput.println(String.format("OUT-F-%d-%s-%d",
-                    insideQueue.peek().getPersonId(), formatFloor(curFloor), id));
-                TimableOutput.println(String.format("IN-%d-%s-%d",
-                    requestQueue.getRequestsAt(curFloor).peek().getPersonId(),
-                    formatFloor(curFloor), id));
-                dispatch.offer(insideQueue.poll(), true, false,curFloor);
-                insideQueue.add(requestQueue.poll(curFloor));
+    private void rearrange() {
+        if (hasPersonInButFull()) {
+            while (requestQueue.hasRequestAt(curFloor) &&
+                    requestQueue.peekAt(curFloor).getPriority() >
+                            rearrangeFactor * insideQueue.peekLowest().getPriority()) {
+                Passenger out = insideQueue.pollLowest();
+                Passenger in = requestQueue.poll(curFloor);
+                clock.log(EventType.OUT_F, out.getPersonId(), curFloor, id);
+                clock.log(EventType.IN, in.getPersonId(), curFloor, id);
+                dispatch.offer(out, true, curFloor);
+                metrics.boarded(in);
+                insideQueue.add(in);
             }
         }
     }
 
-    private synchronized void personOut() {
-        Iterator<PersonRequest> iterator = insideQueue.iterator();
-        while (iterator.hasNext()) {
-            PersonRequest pr = iterator.next();
-            if (intOf(pr.getToFloor()) == curFloor) {
-                dispatch.onePersonArrive();
-                iterator.remove();  // 安全删除
-                TimableOutput.println(String.format("OUT-S-%d-%s-%d",
-                    pr.getPersonId(), formatFloor(curFloor), id));
-                if (dispatch.allElevatorsBusy()) {
-                    dispatch.hasFreeElevator();
-                }
-            } else if (afterUpdate && curFloor == transferFloor && !canArriveTargetOf(pr)) {
-                iterator.remove();  // 安全删除
-                TimableOutput.println(String.format("OUT-F-%d-%s-%d",
-                    pr.getPersonId(), formatFloor(curFloor), id));
-                dispatch.offer(pr, true, false, curFloor);
-                if (dispatch.allElevatorsBusy()) {
-                    dispatch.hasFreeElevator();
+    // 电梯腾出了容量或等待队列位置，分配线程可能正在等待空闲电梯
+    private void notifyFree() {
+        freed = true;
+    }
+
+    // 只访问目的地为当前楼层的乘客；改造后在换乘层还要放下无法送达的乘客
+    private void personOut() {
+        arriveAll();
+        if (afterUpdate && curFloor == transferFloor) {
+            for (int floor = insideQueue.firstStopOutside(limitMinFloor, limitMaxFloor);
+                 floor != 0; floor = insideQueue.firstStopOutside(limitMinFloor, limitMaxFloor)) {
+                for (Passenger pr = insideQueue.pollAt(floor); pr != null;
+                     pr = insideQueue.pollAt(floor)) {
+                    clock.log(EventType.OUT_F, pr.getPersonId(), curFloor, id);
+                    if (pr.getTransferCar() == partnerElevatorId) {
+                        handOff(pr);
+                    } else {
+                        dispatch.offer(pr, true, curFloor);
+                    }
+                    notifyFree();
                 }
             }
         }
     }
 
-    private synchronized void allPersonOut() {
-        Iterator<PersonRequest> iterator = insideQueue.iterator();
-        while (iterator.hasNext()) {
-            PersonRequest pr = iterator.next();
-            if (intOf(pr.getToFloor()) == curFloor) {
-                iterator.remove();  // 安全删除
-                TimableOutput.println(String.format("OUT-S-%d-%s-%d",
-                    pr.getPersonId(), formatFloor(curFloor), id));
-                dispatch.onePersonArrive();
-                if (dispatch.allElevatorsBusy()) {
-                    dispatch.hasFreeElevator();
-                }
-            } else {
-                iterator.remove();  // 安全删除
-                TimableOutput.println(String.format("OUT-F-%d-%s-%d",
-                    pr.getPersonId(), formatFloor(curFloor), id));
-                dispatch.offer(pr, true, false, curFloor);
-            }
+    // 第二程已预留给搭档电梯：在这里发出分配，乘客直接进入搭档的等待队列
+    private void handOff(Passenger pr) {
+        pr.setCurFloor(curFloor);
+        pr.setTransferCar(0);
+        clock.log(EventType.RECEIVE, pr.getPersonId(), partnerElevatorId, 0);
+        elevators[partnerElevatorId].takeOver(pr);
+    }
+
+    private void allPersonOut() {
+        arriveAll();
+        for (Passenger pr = insideQueue.pollLowest(); pr != null; pr = insideQueue.pollLowest()) {
+            clock.log(EventType.OUT_F, pr.getPersonId(), curFloor, id);
+            dispatch.offer(pr, true, curFloor);
         }
     }
 
-    private synchronized void personIn() {
-        while (requestQueue.getRequestsAt(curFloor) != null &&
-                !requestQueue.getRequestsAt(curFloor).isEmpty() &&
-                insideQueue.size() < capacity) {
-            PersonRequest inPerson = requestQueue.poll(curFloor);
-            TimableOutput.println(String.format("IN-%d-%s-%d",
-                inPerson.getPersonId(), formatFloor(curFloor), id));
+    private void arriveAll() {
+        for (Passenger pr = insideQueue.pollAt(curFloor); pr != null;
+             pr = insideQueue.pollAt(curFloor)) {
+            clock.log(EventType.OUT_S, pr.getPersonId(), curFloor, id);
+            metrics.arrived(pr);
+            dispatch.onePersonArrive();
+            notifyFree();
+        }
+    }
+
+    private void personIn() {
+        while (requestQueue.hasRequestAt(curFloor) && insideQueue.size() < capacity) {
+            Passenger inPerson = requestQueue.poll(curFloor);
+            clock.log(EventType.IN, inPerson.getPersonId(), curFloor, id);
+            metrics.boarded(inPerson);
             insideQueue.add(inPerson);
+            notifyFree();
         }
     }
 
-    private String formatFloor(int floor) {
-        return floor < 0 ? String.format("B%d", Math.abs(floor)) :
-                String.format("F%d", Math.abs(floor));
+    public boolean isFinished() {
+        return mailbox.isEmpty() && requestQueue.isEnd() && requestQueue.isEmpty() &&
+            insideQueue.isEmpty() && !inSchedule;
+    }
+
+    public boolean shouldWait() {
+        return mailbox.isEmpty() && !requestQueue.isEnd() && requestQueue.isEmpty() &&
+            insideQueue.isEmpty() && !inSchedule && !hasAcceptUpdate &&
+            (!afterUpdate || curFloor != transferFloor) && !needsParking() && !needsStaging();
     }
 
-    private int intOf(String floor) {
-        return floor.startsWith("B") ? (-Integer.parseInt(floor.substring(1))) :
-                (Integer.parseInt(floor.substring(1)));
+    // 处理已收到的命令并执行一次动作，返回是否有动作；没有动作时需等待新命令才可能继续
+    public boolean step() {
+        receive();
+        if (requestQueue.hasSche() && !inSchedule) {
+            scheduleStart(requestQueue.getScheRequest());
+        }
+        boolean acted = execute();
+        publish();
+        return acted;
     }
 
     @Override
     public void run() {
+        boolean woke = false;
         while (true) {
-            if (requestQueue.isEnd() && requestQueue.isEmpty() &&
-                insideQueue.isEmpty() && !inSchedule) {
+            receive();
+            if (isFinished()) {
                 return;
             }
-            while (!requestQueue.isEnd() && requestQueue.isEmpty() &&
-                    insideQueue.isEmpty() && !inSchedule && !hasAcceptUpdate &&
-                    (!afterUpdate || curFloor != transferFloor)) {
-                try {
-                    requestQueue.myWait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+            if (shouldWait() || !step()) {
+                if (woke) {
+                    carMetrics.uselessWakeup();
                 }
+                carMetrics.wokeUp(mailbox.await());
+                woke = true;
+            } else {
+                woke = false;
             }
-            if (requestQueue.hasSche() && !inSchedule) {
-                scheduleStart(requestQueue.getScheRequest());
-            }
-            try {
-                execute();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        }
+    }
+
+    // 等待一段时间后要执行的动作：到达、关门、临时调度停靠结束、改造前放下乘客后关门、改造结束
+    private enum TimedAction { ARRIVE, CLOSE, SCHE_CLOSE, UPDATE_CLOSE, UPDATE_END }
+
+    private enum CommandKind {
+        ASSIGN, PARK, RESERVE_TRANSFER, RELEASE_TRANSFER, TAKE_OVER, SCHEDULE, ACCEPT_UPDATE,
+        UPDATE_DONE, TRANSFER_FREED, END
+    }
+
+    // 邮箱中的命令只记下种类与参数（乘客、楼层或请求），由电梯线程在 apply 中执行，也便于写入检查点
+    private static final class Command {
+        private final CommandKind kind;
+        private final Object arg;
+
+        private Command(CommandKind kind, Object arg) {
+            this.kind = kind;
+            this.arg = arg;
         }
     }
 }
@@ -0,0 +1,85 @@
+// 电梯在一次动作前后发布的只读状态，分配线程与搭档电梯只读取快照，不接触电梯本身的状态
+public final class ElevatorSnapshot {
+    private final boolean available;
+    private final int load;
+    private final int inside;
+    private final int floor;
+    private final int direction;
+    private final long timePerFloor;
+    private final int minFloor;
+    private final int maxFloor;
+    private final int transferFloor;
+    private final int partner;
+    // 轿厢内乘客的目的楼层与等候乘客所在楼层，下标为楼层减去最低层
+    private final boolean[] stops;
+    private final long assignsApplied;
+    // 空闲时要停靠的楼层，0 表示原地等待
+    private final int parkFloor;
+
+    public ElevatorSnapshot(boolean available, int load, int inside, int floor, int direction,
+        long timePerFloor, int minFloor, int maxFloor, int transferFloor, int partner,
+        boolean[] stops, long assignsApplied, int parkFloor) {
+        this.available = available;
+        this.load = load;
+        this.inside = inside;
+        this.floor = floor;
+        this.direction = direction;
+        this.timePerFloor = timePerFloor;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.transferFloor = transferFloor;
+        this.partner = partner;
+        this.stops = stops;
+        this.assignsApplied = assignsApplied;
+        this.parkFloor = parkFloor;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public int getLoad() {
+        return load;
+    }
+
+    public int getInside() {
+        return inside;
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public long getTimePerFloor() {
+        return timePerFloor;
+    }
+
+    public boolean canArriveAt(int floor) {
+        return floor >= minFloor && floor <= maxFloor;
+    }
+
+    public int getTransferFloor() {
+        return transferFloor;
+    }
+
+    // 改造后同一井道中的另一部电梯，未改造时为 0
+    public int getPartner() {
+        return partner;
+    }
+
+    public long getAssignsApplied() {
+        return assignsApplied;
+    }
+
+    public int getParkFloor() {
+        return parkFloor;
+    }
+
+    public void copyStopsTo(boolean[] target) {
+        System.arraycopy(stops, 0, target, 0, stops.length);
+    }
+}
@@ -0,0 +1,45 @@
+// 节能分配：在预计接到乘客的时间之外计入新增的电耗，每单位电耗（一次到达为 0.4）折合 weight 毫秒等待。
+// 新增电耗按电梯本轮已规划的行程之外需要多走的层数与新增的停靠楼层估算：途经起点与终点的电梯不多走，
+// 已有停靠的楼层不必另开一次门，空闲电梯接客则整段行程都计入；此模式下空车不去停靠或在换乘层旁等候，
+// 接客时先去最近的候梯楼层
+public class EnergyStrategy extends EtaStrategy {
+    private static final long defaultWeight = 2000;
+    private static final double floorEnergy = 0.4;
+    // 开门与关门各 0.1
+    private static final double stopEnergy = 0.2;
+    private final long weight;
+
+    public EnergyStrategy(long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("invalid energy weight");
+        }
+        this.weight = weight;
+    }
+
+    // 通过 -Delevator.energy.weight 配置折算权重，0 时分配与按预计到达时间分配相同
+    public static EnergyStrategy fromProperties() {
+        return new EnergyStrategy(Long.getLong("elevator.energy.weight", defaultWeight));
+    }
+
+    @Override
+    protected long cost(CarState car, Passenger passenger) {
+        return super.cost(car, passenger) + Math.round(weight * energy(car, passenger));
+    }
+
+    private static double energy(CarState car, Passenger passenger) {
+        int origin = passenger.getCurFloor();
+        // 不能直达时终点由换乘后的搭档负责，这里只计起点
+        int target = car.canArriveTargetOf(passenger) ? passenger.getToFloor() : origin;
+        int stops = (car.hasStopAt(origin) ? 0 : 1) + (car.hasStopAt(target) ? 0 : 1);
+        if (target == origin) {
+            stops = Math.min(stops, 1);
+        }
+        return floorEnergy * car.floorsBeyondRoute(Math.min(origin, target),
+            Math.max(origin, target)) + stopEnergy * stops;
+    }
+
+    @Override
+    public boolean avoidsEmptyMoves() {
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+// 按预计接到乘客的时间分配：考虑电梯当前方向、途经停靠、速度与负载
+public class EtaStrategy implements DispatchStrategy {
+    private static final long doorTime = 400;
+    // 无法直达终点时需要换乘，额外计入一段等待
+    private static final long transferPenalty = 2000;
+
+    @Override
+    public int select(Passenger passenger, CarState[] cars) {
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int i = 1; i < cars.length; i++) {
+            if (!cars[i].canTake(passenger) || !cars[i].canCarryCloser(passenger)) {
+                continue;
+            }
+            long cost = cost(cars[i], passenger);
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    // 把乘客分给该电梯的代价（毫秒），选代价最小的电梯；子类可在此计入其他因素
+    protected long cost(CarState car, Passenger passenger) {
+        long cost = eta(car, passenger.getCurFloor());
+        // 轿厢与等待队列越满，接到后越可能因满载而多停或被踢出
+        int crowd = car.getInside() + car.getLoad() + 1 - car.getCapacity();
+        if (crowd > 0) {
+            cost += crowd * 2 * doorTime;
+        }
+        if (!car.canArriveTargetOf(passenger)) {
+            cost += transferPenalty;
+        }
+        return cost;
+    }
+
+    public static long eta(CarState car, int origin) {
+        int floor = car.getFloor();
+        int direction = car.getDirection();
+        if (direction == 0 || Integer.signum(origin - floor) != -direction) {
+            // 顺路或空闲：直接前往，途中的停靠各计一次开关门
+            return travel(car, floor, origin);
+        }
+        // 先走完当前方向上最远的停靠点再折返
+        int turn = car.getFarthestStop(direction);
+        return travel(car, floor, turn) + travel(car, turn, origin);
+    }
+
+    private static long travel(CarState car, int from, int to) {
+        int stopsOnWay = car.countStopsBetween(from, to);
+        return Floors.distance(from, to) * car.getTimePerFloor() + stopsOnWay * doorTime;
+    }
+}
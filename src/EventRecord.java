@@ -0,0 +1,63 @@
+import com.oocourse.elevator3.Request;
+
+// 环形缓冲区中的一个槽位，预先分配并反复复用；输入请求也经同一缓冲区按输出顺序交给消费者，此时 type 为 null
+public final class EventRecord {
+    private volatile long sequence = -1;
+    private EventType type;
+    private long time;
+    private int argA;
+    private int argB;
+    private int argC;
+    private Request request;
+
+    // 时间戳在取得序号时写入
+    void stamp(long time) {
+        this.time = time;
+    }
+
+    void fill(EventType type, int a, int b, int c) {
+        this.type = type;
+        this.argA = a;
+        this.argB = b;
+        this.argC = c;
+        this.request = null;
+    }
+
+    void fillInput(Request request) {
+        this.type = null;
+        this.request = request;
+    }
+
+    // 字段写完后再写入序号，消费者读到对应序号即可安全读取字段
+    void publish(long sequence) {
+        this.sequence = sequence;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getArgA() {
+        return argA;
+    }
+
+    public int getArgB() {
+        return argB;
+    }
+
+    public int getArgC() {
+        return argC;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+}
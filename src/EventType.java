@@ -0,0 +1,45 @@
+// 输出事件的种类，参数 a/b/c 按输出中出现的顺序给出，楼层参数会被格式化为 B?/F?
+public enum EventType {
+    ARRIVE("ARRIVE", 2, 0), OPEN("OPEN", 2, 0), CLOSE("CLOSE", 2, 0),
+    IN("IN", 3, 1), OUT_S("OUT-S", 3, 1), OUT_F("OUT-F", 3, 1),
+    RECEIVE("RECEIVE", 2, -1),
+    SCHE_BEGIN("SCHE-BEGIN", 1, -1), SCHE_END("SCHE-END", 1, -1),
+    UPDATE_BEGIN("UPDATE-BEGIN", 2, -1), UPDATE_END("UPDATE-END", 2, -1);
+
+    private final String name;
+    private final int arity;
+    private final int floorIndex;
+
+    EventType(String name, int arity, int floorIndex) {
+        this.name = name;
+        this.arity = arity;
+        this.floorIndex = floorIndex;
+    }
+
+    // 按 TimableOutput 的格式 "[%10.4f]" 追加一行，不经过 String.format
+    public void appendTo(StringBuilder sb, long millis, int a, int b, int c) {
+        long seconds = millis / 1000;
+        long frac = millis % 1000;
+        int width = 6;
+        for (long v = seconds; v >= 10; v /= 10) {
+            width++;
+        }
+        sb.append('[');
+        for (int pad = 10 - width; pad > 0; pad--) {
+            sb.append(' ');
+        }
+        sb.append(seconds).append('.');
+        sb.append(frac < 100 ? (frac < 10 ? "00" : "0") : "").append(frac).append("0]");
+        sb.append(name);
+        for (int i = 0; i < arity; i++) {
+            int value = i == 0 ? a : i == 1 ? b : c;
+            sb.append('-');
+            if (i == floorIndex) {
+                sb.append(value < 0 ? 'B' : 'F').append(Math.abs(value));
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,169 @@
+import com.oocourse.elevator3.Request;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 多生产者单消费者的无锁环形缓冲区：电梯与分配线程只写入事件记录，由独立的输出线程批量格式化并输出
+public class EventWriter implements Runnable {
+    private static final int capacity = 1 << 14;
+    private static final int mask = capacity - 1;
+    private static final int batchChars = 8192;
+    private final EventRecord[] slots = new EventRecord[capacity];
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed = 0;
+    private volatile boolean closed = false;
+    // 输出线程无事可做时登记自己后挂起，生产者发布记录后唤醒它
+    private volatile Thread sleeper;
+    private final PrintStream out;
+    private final long startTime;
+    private Thread thread;
+    // 输出线程按输出顺序把事件写入追踪文件，须在 start 之前设置
+    private TraceWriter trace;
+    // 输出线程把输入与事件按输出顺序交给校验器，同样须在 start 之前设置
+    private Verifier verifier;
+
+    public EventWriter(PrintStream out) {
+        this.out = out;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new EventRecord();
+        }
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public void setTrace(TraceWriter trace) {
+        this.trace = trace;
+    }
+
+    public void setVerifier(Verifier verifier) {
+        this.verifier = verifier;
+    }
+
+    // 输出线程在这里创建，构造过程中不把 this 交给其他线程
+    public void start() {
+        thread = new Thread(this, "event_writer");
+        thread.setDaemon(true);
+        thread.start();
+        // 进程退出前输出所有已记录的事件
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    // 返回事件的时间戳（相对启动时刻的毫秒数）
+    public long write(EventType type, int a, int b, int c) {
+        long seq = claim();
+        EventRecord record = slots[(int) (seq & mask)];
+        record.fill(type, a, b, c);
+        publish(record, seq);
+        return record.getTime();
+    }
+
+    // 记录输入请求的到达时间，与事件使用同一时间基准；经缓冲区交给输出线程，
+    // 追踪文件与校验器看到的输入与事件保持输出顺序
+    public void record(Request request) {
+        if (trace == null && verifier == null) {
+            return;
+        }
+        long seq = claim();
+        EventRecord record = slots[(int) (seq & mask)];
+        record.fillInput(request);
+        publish(record, seq);
+    }
+
+    // 取得序号并在槽位中记下时间戳。时间在读到当前序号之后、CAS 之前读取：
+    // 取得下一个序号的线程必然在本次 CAS 成功之后才读时间，序号顺序与时间顺序一致
+    private long claim() {
+        long seq;
+        long time;
+        do {
+            seq = claimed.get();
+            time = System.currentTimeMillis() - startTime;
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        while (seq - capacity >= consumed) {
+            // 缓冲区已满，等待输出线程追上
+            Thread.yield();
+        }
+        slots[(int) (seq & mask)].stamp(time);
+        return seq;
+    }
+
+    private void publish(EventRecord record, long seq) {
+        record.publish(seq);
+        Thread waiter = sleeper;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void run() {
+        StringBuilder sb = new StringBuilder(batchChars * 2);
+        long next = 0;
+        while (true) {
+            EventRecord record = slots[(int) (next & mask)];
+            if (record.getSequence() == next) {
+                long time = record.getTime();
+                if (record.getType() == null) {
+                    if (trace != null) {
+                        trace.input(time, record.getRequest());
+                    }
+                    if (verifier != null) {
+                        verifier.input(time, record.getRequest());
+                    }
+                    next++;
+                    continue;
+                }
+                record.getType().appendTo(sb, time,
+                    record.getArgA(), record.getArgB(), record.getArgC());
+                if (trace != null) {
+                    trace.event(record.getType(), time,
+                        record.getArgA(), record.getArgB(), record.getArgC());
+                }
+                if (verifier != null) {
+                    verifier.event(record.getType(), time,
+                        record.getArgA(), record.getArgB(), record.getArgC());
+                }
+                next++;
+                if (sb.length() < batchChars) {
+                    continue;
+                }
+            }
+            if (sb.length() > 0) {
+                out.print(sb);
+                out.flush();
+                sb.setLength(0);
+                consumed = next;
+                continue;
+            }
+            consumed = next;
+            if (closed && next == claimed.get()) {
+                return;
+            }
+            await(next);
+        }
+    }
+
+    // 先登记再检查，生产者在发布之后才读取登记的线程，不会丢失唤醒
+    private void await(long next) {
+        sleeper = Thread.currentThread();
+        if (slots[(int) (next & mask)].getSequence() != next && !closed) {
+            LockSupport.park(this);
+        }
+        sleeper = null;
+    }
+
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (trace != null) {
+            trace.close();
+        }
+        if (verifier != null) {
+            System.err.print(verifier.report());
+        }
+    }
+}
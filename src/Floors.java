@@ -0,0 +1,23 @@
+public final class Floors {
+    public static final int MAX_FLOOR = 7;
+    public static final int MIN_FLOOR = -4;
+
+    private Floors() {
+    }
+
+    // "B2" -> -2, "F5" -> 5，只在请求进入系统时调用
+    public static int parse(String floor) {
+        int value = Integer.parseInt(floor.substring(1));
+        return floor.charAt(0) == 'B' ? -value : value;
+    }
+
+    public static String format(int floor) {
+        return floor < 0 ? "B" + (-floor) : "F" + floor;
+    }
+
+    // 两层之间需要移动的层数，没有 0 层
+    public static int distance(int from, int to) {
+        int diff = Math.abs(from - to);
+        return (from < 0) != (to < 0) ? diff - 1 : diff;
+    }
+}
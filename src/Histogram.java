@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 对数分桶的无锁直方图：每个 2 的幂区间再等分为 8 个子桶，相对误差不超过 1/8，记录一次只需几次原子加
+public class Histogram {
+    private static final int subBits = 3;
+    private static final int subCount = 1 << subBits;
+    private final AtomicLongArray buckets = new AtomicLongArray((64 - subBits) * subCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    private static int bucketOf(long v) {
+        if (v < subCount) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - subBits)) & (subCount - 1);
+        return (exp - subBits + 1) * subCount + sub;
+    }
+
+    private static long lowerBoundOf(int bucket) {
+        int block = bucket / subCount;
+        int sub = bucket % subCount;
+        if (block == 0) {
+            return sub;
+        }
+        return (long) (subCount | sub) << (block - 1);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // q 取 0 到 1，返回所在桶的下界；并发记录时各桶之间不是同一时刻的值，只作近似
+    public long getPercentile(double q) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public String summary() {
+        return String.format("n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", getCount(), getMean(),
+            getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+    }
+}
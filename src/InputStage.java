@@ -0,0 +1,123 @@
+import com.oocourse.elevator3.ElevatorInput;
+import com.oocourse.elevator3.Request;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+// 输入阶段：解析线程读取并解析请求，写入有界的单生产者单消费者无锁环形队列，分配线程每轮开始时一次取空；
+// 解析与分配互不持有对方的锁，输入突发时由队列吸收，分配较慢时也不影响继续读取输入
+public class InputStage implements Runnable {
+    private static final int defaultCapacity = 1024;
+    private final ElevatorInput input;
+    private final Dispatch dispatch;
+    private final Metrics metrics;
+    // 队列满时 true 直接进入分配线程的锁提交，false 阻塞解析线程等待分配线程取走
+    private final boolean direct;
+    private final int mask;
+    // 已解析的请求（乘客已转换为 Passenger）及其入队时刻（纳秒）
+    private final Object[] slots;
+    private final long[] enqueuedAt;
+    // 生产者只写 tail，消费者只写 head
+    private volatile long tail = 0;
+    private volatile long head = 0;
+
+    public InputStage(ElevatorInput input, Dispatch dispatch, int capacity, boolean direct) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("input queue capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.input = input;
+        this.dispatch = dispatch;
+        this.metrics = dispatch.getMetrics();
+        this.direct = direct;
+        this.mask = size - 1;
+        this.slots = new Object[size];
+        this.enqueuedAt = new long[size];
+    }
+
+    // 通过 -Delevator.ingest（队列容量，取整到 2 的幂）与 -Delevator.ingest.full
+    // （队列满时 block 阻塞解析线程，direct 直接提交给分配线程）配置
+    public static InputStage fromProperties(ElevatorInput input, Dispatch dispatch) {
+        int capacity = Integer.getInteger("elevator.ingest", defaultCapacity);
+        String full = System.getProperty("elevator.ingest.full", "block");
+        if (!"block".equals(full) && !"direct".equals(full)) {
+            throw new IllegalArgumentException("elevator.ingest.full must be block or direct");
+        }
+        return new InputStage(input, dispatch, capacity, "direct".equals(full));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Request request = input.nextRequest();
+            if (request == null) {
+                break;
+            }
+            Object item = dispatch.prepare(request);
+            if (tryPut(item)) {
+                dispatch.inputArrived();
+            } else if (direct) {
+                dispatch.offerDirect(item);
+            } else {
+                putBlocking(item);
+                dispatch.inputArrived();
+            }
+        }
+        dispatch.setInputIsEnd();
+        try {
+            input.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean tryPut(Object item) {
+        long t = tail;
+        if (t - head > mask) {
+            return false;
+        }
+        int i = (int) (t & mask);
+        slots[i] = item;
+        enqueuedAt[i] = System.nanoTime();
+        tail = t + 1;
+        return true;
+    }
+
+    // 队列满时退避等待分配线程取走，等待时长计入指标
+    private void putBlocking(Object item) {
+        long since = System.nanoTime();
+        int spins = 0;
+        while (!tryPut(item)) {
+            if (spins++ < 64) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
+        }
+        metrics.inputStalled(System.nanoTime() - since);
+    }
+
+    public boolean hasPending() {
+        return head != tail;
+    }
+
+    // 以下由消费方调用：分配线程，或在分配线程的锁内直接提交的解析线程，两者由锁互斥
+    public void drainTo(Dispatch target) {
+        long h = head;
+        long t = tail;
+        if (h == t) {
+            return;
+        }
+        metrics.inputBatch(t - h);
+        long now = System.nanoTime();
+        for (; h < t; h++) {
+            int i = (int) (h & mask);
+            Object item = slots[i];
+            slots[i] = null;
+            metrics.inputLagged(now - enqueuedAt[i]);
+            target.admit(item);
+        }
+        head = h;
+    }
+}
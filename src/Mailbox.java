@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// 多生产者单消费者的无锁链表队列：任意线程投递，只有所属线程取出和等待
+public class Mailbox<T> {
+    private static final class Node<T> {
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+
+    // 生产者只交换 tail，消费者只移动 head，head 始终指向已取出的哨兵节点
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+    private volatile Thread owner;
+
+    public Mailbox() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    public void post(T message) {
+        Node<T> node = new Node<>(message);
+        tail.getAndSet(node).next = node;
+        Thread waiter = owner;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    // 以下方法只能由所属线程调用
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    // 按投递顺序列出尚未取出的消息，不取出
+    public List<T> pending() {
+        List<T> values = new ArrayList<>();
+        for (Node<T> node = head.next; node != null; node = node.next) {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    // 阻塞直到有新消息；先登记等待线程再检查，投递方在链接节点后才读取等待线程，不会丢失唤醒。
+    // 返回醒来时仍没有消息、只得再次等待的次数
+    public int await() {
+        owner = Thread.currentThread();
+        int spurious = -1;
+        while (isEmpty()) {
+            spurious++;
+            LockSupport.park(this);
+        }
+        return Math.max(0, spurious);
+    }
+}
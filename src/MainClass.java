@@ -1,33 +1,90 @@
 import com.oocourse.elevator3.ElevatorInput;
-import com.oocourse.elevator3.Request;
-import com.oocourse.elevator3.TimableOutput;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MainClass {
     public static void main(String[] args) throws Exception {
-        TimableOutput.initStartTimestamp();
-        Elevator[] elevators = new Elevator[7];
+        Building building = Building.fromProperties();
+        String replay = System.getProperty("elevator.replay");
+        if (replay != null) {
+            // 回放追踪文件：按记录的到达时间在虚拟时钟下重新运行，或只还原记录的输出
+            TraceReader trace = new TraceReader(Paths.get(replay));
+            if (Boolean.getBoolean("elevator.replay.events")) {
+                trace.printEvents(System.out);
+            } else {
+                runVirtual(building, trace.getRequests());
+            }
+            return;
+        }
+        if ("virtual".equals(System.getProperty("elevator.clock"))) {
+            // 虚拟时钟离散事件模式：按输入时间戳回放，不占用真实时间
+            runVirtual(building, TimedRequest.readAll(System.in));
+            return;
+        }
+        // 事件由独立线程批量格式化输出，电梯与分配线程只写入环形缓冲区
+        EventWriter writer = new EventWriter(System.out);
+        writer.setTrace(TraceWriter.fromProperties());
+        writer.setVerifier(Verifier.fromProperties(building, false));
+        writer.start();
+        SimClock clock = new RealClock(writer);
+        Threads threads = Threads.fromProperties();
+        List<Thread> started = new ArrayList<>();
+        Elevator[] elevators = new Elevator[building.getCars() + 1];
         // 启动分配线程
-        Dispatch dispatch = new Dispatch(elevators);
-        new Thread(dispatch, "dispatch").start();
+        Dispatch dispatch = new Dispatch(elevators, clock, Policy.fromProperties());
+        // 输入由独立的解析线程读取，经有界队列交给分配线程
+        InputStage input = InputStage.fromProperties(new ElevatorInput(System.in), dispatch);
+        dispatch.setInputStage(input);
+        dispatch.setUpdateExecutor(threads.newExecutor());
+        started.add(threads.start(dispatch, "dispatch"));
+        String metricsPeriod = System.getProperty("elevator.metrics");
+        if (metricsPeriod != null) {
+            dispatch.getMetrics().startPeriodicDump(System.err, Long.parseLong(metricsPeriod));
+        }
 
-        // 启动六个电梯线程
-        for (int i = 1; i <= 6; i++) {
-            elevators[i] = new Elevator(i, dispatch, elevators);
-            new Thread(elevators[i], "elevator_" + i).start();
+        // 启动电梯线程
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i] = new Elevator(i, dispatch, elevators, clock, building);
+            started.add(threads.start(elevators[i], "elevator_" + i));
         }
 
-        // 将输入分配到对应电梯
-        ElevatorInput elevatorInput = new ElevatorInput(System.in);
-        while (true) {
-            Request request = elevatorInput.nextRequest();
-            if (request == null) {
-                dispatch.setInputIsEnd();
-                break;
-            } else {
-                dispatch.offer(request, false, true, 0);
-            }
+        // 电梯全部创建后才开始读取输入
+        started.add(threads.start(input, "input"));
+        // 虚拟线程都是守护线程，主线程须等待它们结束
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+
+    private static void runVirtual(Building building, List<TimedRequest> requests)
+        throws Exception {
+        VirtualClock clock = new VirtualClock(System.out);
+        TraceWriter trace = TraceWriter.fromProperties();
+        clock.setTrace(trace);
+        // 从检查点恢复时拓扑取自检查点，输入须与写出时相同，已读取的部分会被跳过
+        String restore = System.getProperty("elevator.restore");
+        Simulation simulation = restore == null ?
+            new Simulation(clock, building, Policy.fromProperties()) :
+            Checkpoint.read(Paths.get(restore), clock, Policy.fromProperties());
+        // 校验器须从头看到全部输出，恢复的运行不做校验
+        Verifier verifier = restore == null ? Verifier.fromProperties(building, true) : null;
+        clock.setVerifier(verifier);
+        String checkpoint = System.getProperty("elevator.checkpoint");
+        if (checkpoint != null) {
+            simulation.setCheckpoint(Long.getLong("elevator.checkpoint.at", 0),
+                Paths.get(checkpoint));
+        }
+        simulation.run(requests);
+        if (trace != null) {
+            trace.close();
+        }
+        if (verifier != null) {
+            System.err.print(verifier.report());
+        }
+        if (System.getProperty("elevator.metrics") != null) {
+            System.err.print(simulation.getMetrics().report());
         }
-        // 结束分配进程
-        elevatorInput.close();
     }
 }
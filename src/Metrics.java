@@ -0,0 +1,204 @@
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 运行指标：乘客各阶段耗时、被重新分配次数、各电梯运行情况与分配线程锁的等待时间，
+// 记录只做原子加，可在满负载下常开；通过 getter 拉取，或按 -Delevator.metrics 周期输出到标准错误
+public class Metrics {
+    private final SimClock clock;
+    private final long startTime;
+    private final Histogram offerToReceive = new Histogram();
+    private final Histogram offerToBoard = new Histogram();
+    private final Histogram offerToArrive = new Histogram();
+    private final Histogram reassignments = new Histogram();
+    // 按优先级加权的 进入系统到到达 耗时之和（毫秒）与优先级之和
+    private final LongAdder weightedWait = new LongAdder();
+    private final LongAdder prioritySum = new LongAdder();
+    // 微秒
+    private final Histogram dispatchLockWait = new Histogram();
+    // 输入阶段：请求在输入队列中停留的时间、解析线程因队列满而等待的时间（微秒），以及每次取走的条数
+    private final Histogram inputLag = new Histogram();
+    private final Histogram inputStall = new Histogram();
+    private final Histogram inputBatch = new Histogram();
+    // 改造后一部电梯离开换乘层到等在旁边的搭档取得换乘层的用时（毫秒）
+    private final Histogram transferHandoff = new Histogram();
+    // 分配线程被唤醒的次数，其中醒来时状态未变、只得再次等待的次数，以及醒来后没有发出任何命令的次数
+    private final LongAdder dispatchWakeups = new LongAdder();
+    private final LongAdder dispatchSpurious = new LongAdder();
+    private final LongAdder dispatchUseless = new LongAdder();
+    // 下标为电梯编号，0 号不用
+    private final CarMetrics[] cars;
+
+    public Metrics(SimClock clock, int slots) {
+        this.clock = clock;
+        this.startTime = clock.now();
+        this.cars = new CarMetrics[slots];
+        for (int i = 0; i < slots; i++) {
+            cars[i] = new CarMetrics();
+        }
+    }
+
+    public void offered(Passenger passenger) {
+        passenger.setOfferedAt(clock.now());
+    }
+
+    public void received(Passenger passenger) {
+        if (passenger.markReceived()) {
+            offerToReceive.record(clock.now() - passenger.getOfferedAt());
+        }
+    }
+
+    public void boarded(Passenger passenger) {
+        if (passenger.markBoarded()) {
+            offerToBoard.record(clock.now() - passenger.getOfferedAt());
+        }
+    }
+
+    public void arrived(Passenger passenger) {
+        offerToArrive.record(clock.now() - passenger.getOfferedAt());
+        reassignments.record(passenger.getReassignments());
+        weightedWait.add(passenger.getPriority() * (clock.now() - passenger.getOfferedAt()));
+        prioritySum.add(passenger.getPriority());
+    }
+
+    public void lockWaited(long nanos) {
+        dispatchLockWait.record(nanos / 1000);
+    }
+
+    public void inputLagged(long nanos) {
+        inputLag.record(nanos / 1000);
+    }
+
+    public void inputStalled(long nanos) {
+        inputStall.record(nanos / 1000);
+    }
+
+    public void inputBatch(long size) {
+        inputBatch.record(size);
+    }
+
+    public void transferHandedOff(long millis) {
+        transferHandoff.record(millis);
+    }
+
+    public void dispatchWakeup() {
+        dispatchWakeups.increment();
+    }
+
+    public void dispatchSpuriousWakeup() {
+        dispatchSpurious.increment();
+    }
+
+    public void dispatchUselessWakeup() {
+        dispatchUseless.increment();
+    }
+
+    public CarMetrics car(int id) {
+        return cars[id];
+    }
+
+    public Histogram getOfferToReceive() {
+        return offerToReceive;
+    }
+
+    public Histogram getOfferToBoard() {
+        return offerToBoard;
+    }
+
+    public Histogram getOfferToArrive() {
+        return offerToArrive;
+    }
+
+    public Histogram getReassignments() {
+        return reassignments;
+    }
+
+    public Histogram getDispatchLockWait() {
+        return dispatchLockWait;
+    }
+
+    public Histogram getInputLag() {
+        return inputLag;
+    }
+
+    public Histogram getInputStall() {
+        return inputStall;
+    }
+
+    public Histogram getInputBatch() {
+        return inputBatch;
+    }
+
+    public Histogram getTransferHandoff() {
+        return transferHandoff;
+    }
+
+    public long getDispatchWakeups() {
+        return dispatchWakeups.sum();
+    }
+
+    public long getDispatchSpuriousWakeups() {
+        return dispatchSpurious.sum();
+    }
+
+    public long getDispatchUselessWakeups() {
+        return dispatchUseless.sum();
+    }
+
+    // 已到达乘客按优先级加权的平均耗时（秒），与评测的等待时间指标一致
+    public double getWeightedWait() {
+        long weight = prioritySum.sum();
+        return weight == 0 ? 0 : weightedWait.sum() / 1000.0 / weight;
+    }
+
+    // 按评测的电耗计算：每移动一层 0.4，每次开门、关门各 0.1
+    public double getEnergy() {
+        double energy = 0;
+        for (int i = 1; i < cars.length; i++) {
+            energy += 0.4 * cars[i].getFloorsMoved() + 0.2 * cars[i].getDoorCycles();
+        }
+        return energy;
+    }
+
+    public long getIdleMillis(int id) {
+        return Math.max(0, clock.now() - startTime - cars[id].getBusyMillis());
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[metrics %.1fs]%n", (clock.now() - startTime) / 1000.0));
+        sb.append("offer->receive ms  ").append(offerToReceive.summary()).append('\n');
+        sb.append("offer->board ms    ").append(offerToBoard.summary()).append('\n');
+        sb.append("offer->arrive ms   ").append(offerToArrive.summary()).append('\n');
+        sb.append("reassignments      ").append(reassignments.summary()).append('\n');
+        sb.append("dispatch lock us   ").append(dispatchLockWait.summary()).append('\n');
+        sb.append("input lag us       ").append(inputLag.summary()).append('\n');
+        sb.append("input stall us     ").append(inputStall.summary()).append('\n');
+        sb.append("input batch        ").append(inputBatch.summary()).append('\n');
+        sb.append("transfer wait ms   ").append(transferHandoff.summary()).append('\n');
+        sb.append(String.format("dispatch wakeups   n=%d spurious=%d useless=%d%n",
+            dispatchWakeups.sum(), dispatchSpurious.sum(), dispatchUseless.sum()));
+        for (int i = 1; i < cars.length; i++) {
+            CarMetrics car = cars[i];
+            sb.append(String.format("car %d floors=%d doors=%d busy=%dms idle=%dms " +
+                "wakeups=%d spurious=%d useless=%d%n", i, car.getFloorsMoved(),
+                car.getDoorCycles(), car.getBusyMillis(), getIdleMillis(i), car.getWakeups(),
+                car.getSpuriousWakeups(), car.getUselessWakeups()));
+        }
+        return sb.toString();
+    }
+
+    // 实时模式下每隔 periodMillis 输出一次，进程退出前再输出一次
+    public void startPeriodicDump(PrintStream out, long periodMillis) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> out.print(report()),
+            periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> out.print(report())));
+    }
+}
@@ -0,0 +1,20 @@
+// 原有的分配规则：优先选第一部能直达终点的电梯，否则选离起点最近的电梯
+public class NearestStrategy implements DispatchStrategy {
+    @Override
+    public int select(Passenger passenger, CarState[] cars) {
+        int nearest = 0;
+        for (int i = 1; i < cars.length; i++) {
+            if (!cars[i].canTake(passenger) || !cars[i].canCarryCloser(passenger)) {
+                continue;
+            }
+            if (cars[i].canArriveTargetOf(passenger)) {
+                return i;
+            }
+            if (nearest == 0 || Math.abs(cars[i].getFloor() - passenger.getFromFloor()) <
+                Math.abs(cars[nearest].getFloor() - passenger.getFromFloor())) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,121 @@
+import com.oocourse.elevator3.PersonRequest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// 乘客请求在进入系统时解析一次，之后的调度只使用这里的整数楼层
+public final class Passenger {
+    private final int personId;
+    private final int fromFloor;
+    private final int toFloor;
+    private final int priority;
+    private int curFloor;
+    // 改造后须换乘时，分配第一程的同时为第二程预留的搭档电梯编号，0 表示没有预留
+    private int transferCar = 0;
+    // 以下只用于统计，由当前持有乘客的线程写入
+    private long offeredAt;
+    private boolean received = false;
+    private boolean boarded = false;
+    private int reassignments = 0;
+
+    public Passenger(PersonRequest pr) {
+        this(pr.getPersonId(), Floors.parse(pr.getFromFloor()),
+            Floors.parse(pr.getToFloor()), pr.getPriority());
+    }
+
+    public Passenger(int personId, int fromFloor, int toFloor, int priority) {
+        this.personId = personId;
+        this.fromFloor = fromFloor;
+        this.toFloor = toFloor;
+        this.priority = priority;
+        this.curFloor = fromFloor;
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(personId);
+        out.writeInt(fromFloor);
+        out.writeInt(toFloor);
+        out.writeInt(priority);
+        out.writeInt(curFloor);
+        out.writeInt(transferCar);
+        out.writeLong(offeredAt);
+        out.writeBoolean(received);
+        out.writeBoolean(boarded);
+        out.writeInt(reassignments);
+    }
+
+    public static Passenger restore(DataInputStream in) throws IOException {
+        Passenger passenger = new Passenger(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        passenger.curFloor = in.readInt();
+        passenger.transferCar = in.readInt();
+        passenger.offeredAt = in.readLong();
+        passenger.received = in.readBoolean();
+        passenger.boarded = in.readBoolean();
+        passenger.reassignments = in.readInt();
+        return passenger;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public int getFromFloor() {
+        return fromFloor;
+    }
+
+    public int getToFloor() {
+        return toFloor;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    // 乘客当前等候的楼层，换乘或被踢出后会变化
+    public int getCurFloor() {
+        return curFloor;
+    }
+
+    public void setCurFloor(int curFloor) {
+        this.curFloor = curFloor;
+    }
+
+    public int getTransferCar() {
+        return transferCar;
+    }
+
+    public void setTransferCar(int transferCar) {
+        this.transferCar = transferCar;
+    }
+
+    public long getOfferedAt() {
+        return offeredAt;
+    }
+
+    public void setOfferedAt(long offeredAt) {
+        this.offeredAt = offeredAt;
+    }
+
+    // 首次被分配时返回 true
+    public boolean markReceived() {
+        boolean first = !received;
+        received = true;
+        return first;
+    }
+
+    // 首次上车时返回 true
+    public boolean markBoarded() {
+        boolean first = !boarded;
+        boarded = true;
+        return first;
+    }
+
+    public int getReassignments() {
+        return reassignments;
+    }
+
+    public void countReassignment() {
+        reassignments++;
+    }
+}
@@ -0,0 +1,91 @@
+// 调度策略的可调参数，每个 Dispatch 持有一份，同一个 JVM 中的多次模拟互不影响
+public final class Policy {
+    private static final int defaultRearrangeFactor = 5;
+    private static final int defaultSpareLoad = 4;
+    private static final long defaultParkWindow = 0;
+    private final DispatchStrategy strategy;
+    // 等候乘客的优先级超过轿厢内最低优先级的这一倍数时，满载电梯放下后者换上前者
+    private final int rearrangeFactor;
+    // 轿厢外的已分配但未上车的乘客数不超过额定载客量加上这一余量
+    private final int spareLoad;
+    // 空闲电梯按最近这段时间（毫秒）内的请求起点停靠到预测需求高的楼层，0 表示不调度空闲电梯
+    private final long parkWindow;
+    // 预留了第二程的搭档电梯空闲时是否到换乘层旁等候；这一移动没有 RECEIVE，不符合题目要求，默认关闭
+    private final boolean staging;
+
+    public Policy(DispatchStrategy strategy, int rearrangeFactor, int spareLoad) {
+        this(strategy, rearrangeFactor, spareLoad, defaultParkWindow, false);
+    }
+
+    public Policy(DispatchStrategy strategy, int rearrangeFactor, int spareLoad, long parkWindow,
+        boolean staging) {
+        if (rearrangeFactor < 1 || spareLoad < 0 || parkWindow < 0) {
+            throw new IllegalArgumentException("invalid dispatch policy");
+        }
+        this.strategy = strategy;
+        this.rearrangeFactor = rearrangeFactor;
+        this.spareLoad = spareLoad;
+        this.parkWindow = parkWindow;
+        this.staging = staging;
+    }
+
+    public static Policy standard() {
+        return new Policy(new EtaStrategy(), defaultRearrangeFactor, defaultSpareLoad);
+    }
+
+    // 通过 -Delevator.strategy、-Delevator.rearrange、-Delevator.spare、-Delevator.park、
+    // -Delevator.stage 配置
+    public static Policy fromProperties() {
+        return new Policy(DispatchStrategy.of(System.getProperty("elevator.strategy")),
+            Integer.getInteger("elevator.rearrange", defaultRearrangeFactor),
+            Integer.getInteger("elevator.spare", defaultSpareLoad),
+            Long.getLong("elevator.park", defaultParkWindow),
+            Boolean.getBoolean("elevator.stage"));
+    }
+
+    public Policy withStrategy(DispatchStrategy strategy) {
+        return new Policy(strategy, rearrangeFactor, spareLoad, parkWindow, staging);
+    }
+
+    public Policy withRearrangeFactor(int rearrangeFactor) {
+        return new Policy(strategy, rearrangeFactor, spareLoad, parkWindow, staging);
+    }
+
+    public Policy withSpareLoad(int spareLoad) {
+        return new Policy(strategy, rearrangeFactor, spareLoad, parkWindow, staging);
+    }
+
+    public Policy withParkWindow(long parkWindow) {
+        return new Policy(strategy, rearrangeFactor, spareLoad, parkWindow, staging);
+    }
+
+    public DispatchStrategy getStrategy() {
+        return strategy;
+    }
+
+    public int getRearrangeFactor() {
+        return rearrangeFactor;
+    }
+
+    public int getSpareLoad() {
+        return spareLoad;
+    }
+
+    public long getParkWindow() {
+        return parkWindow;
+    }
+
+    // 是否按需求预测调度空闲电梯去停靠
+    public boolean parksIdleCars() {
+        return parkWindow > 0 && !strategy.avoidsEmptyMoves();
+    }
+
+    // 是否让搭档电梯到换乘层旁等候预留的乘客
+    public boolean stagesTransfers() {
+        return staging && !strategy.avoidsEmptyMoves();
+    }
+
+    public boolean avoidsEmptyMoves() {
+        return strategy.avoidsEmptyMoves();
+    }
+}
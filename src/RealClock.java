@@ -0,0 +1,34 @@
+import com.oocourse.elevator3.Request;
+
+public class RealClock implements SimClock {
+    private final EventWriter writer;
+
+    public RealClock(EventWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void delay(long millis, Runnable then) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        then.run();
+    }
+
+    @Override
+    public long log(EventType type, int a, int b, int c) {
+        return writer.write(type, a, b, c);
+    }
+
+    @Override
+    public void record(Request request) {
+        writer.record(request);
+    }
+}
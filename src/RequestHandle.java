@@ -0,0 +1,33 @@
+public final class RequestHandle {
+    private final Passenger passenger;
+    private final int floor;
+    private final long seq;
+    // 在全局堆与楼层堆中的下标，删除时据此定位，无需线性查找
+    private final int[] heapIndex = {-1, -1};
+
+    public RequestHandle(Passenger passenger, int floor, long seq) {
+        this.passenger = passenger;
+        this.floor = floor;
+        this.seq = seq;
+    }
+
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    public int getFloor() {
+        return floor;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    int getHeapIndex(int slot) {
+        return heapIndex[slot];
+    }
+
+    void setHeapIndex(int slot, int index) {
+        heapIndex[slot] = index;
+    }
+}
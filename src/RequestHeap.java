@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 按优先级排列的二叉堆（默认从高到低），元素记录自身下标，支持 O(log n) 删除任意元素
+public class RequestHeap {
+    private final int slot;
+    private final boolean lowestFirst;
+    private RequestHandle[] heap = new RequestHandle[8];
+    private int size = 0;
+
+    public RequestHeap(int slot) {
+        this(slot, false);
+    }
+
+    public RequestHeap(int slot, boolean lowestFirst) {
+        this.slot = slot;
+        this.lowestFirst = lowestFirst;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public RequestHandle peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    public void add(RequestHandle handle) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = handle;
+        handle.setHeapIndex(slot, size);
+        siftUp(size++);
+    }
+
+    public RequestHandle poll() {
+        RequestHandle top = peek();
+        if (top != null) {
+            remove(top);
+        }
+        return top;
+    }
+
+    // 按堆中的存放顺序列出全部句柄，写检查点时使用；恢复时带原序号按此顺序重新入堆，不会发生上浮，布局与原先相同
+    public List<RequestHandle> handles() {
+        return new ArrayList<>(Arrays.asList(heap).subList(0, size));
+    }
+
+    // 按堆中的存放顺序取出全部乘客并清空
+    public void drainTo(List<Passenger> target) {
+        for (int i = 0; i < size; i++) {
+            target.add(heap[i].getPassenger());
+        }
+        clear();
+    }
+
+    // 清空后旧句柄不再使用，不必重置它们记录的下标
+    public void clear() {
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    public boolean remove(RequestHandle handle) {
+        int index = handle.getHeapIndex(slot);
+        if (index < 0 || index >= size || heap[index] != handle) {
+            return false;
+        }
+        size--;
+        if (index != size) {
+            move(heap[size], index);
+            siftDown(index);
+            siftUp(index);
+        }
+        heap[size] = null;
+        handle.setHeapIndex(slot, -1);
+        return true;
+    }
+
+    private boolean before(RequestHandle a, RequestHandle b) {
+        int pa = a.getPassenger().getPriority();
+        int pb = b.getPassenger().getPriority();
+        if (pa != pb) {
+            return lowestFirst ? pa < pb : pa > pb;
+        }
+        return a.getSeq() < b.getSeq();
+    }
+
+    private void move(RequestHandle handle, int index) {
+        heap[index] = handle;
+        handle.setHeapIndex(slot, index);
+    }
+
+    private void siftUp(int index) {
+        RequestHandle handle = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(handle, heap[parent])) {
+                break;
+            }
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(handle, index);
+    }
+
+    private void siftDown(int index) {
+        RequestHandle handle = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], handle)) {
+                break;
+            }
+            move(heap[child], index);
+            index = child;
+        }
+        move(handle, index);
+    }
+}
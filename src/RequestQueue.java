@@ -1,112 +1,167 @@
-import com.oocourse.elevator3.PersonRequest;
-import com.oocourse.elevator3.Request;
 import com.oocourse.elevator3.ScheRequest;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.PriorityQueue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
+// 分配给一部电梯、尚未上车的乘客，只由该电梯的线程访问
 public class RequestQueue {
-    private PriorityQueue<PersonRequest> personRequests;
-    private HashMap<Integer, PriorityQueue<PersonRequest>> requestMap;
+    private final int maxFloor;
+    private final int minFloor;
+    // 同一个句柄同时挂在全局堆（slot 0）和所在楼层的堆（slot 1）上
+    private final RequestHeap personRequests = new RequestHeap(0);
+    private final RequestHeap[] floorRequests;
+    // 有乘客等候的楼层，下标为楼层减去最低层；查找下一个目标楼层时只访问这些楼层
+    private final BitSet waitingFloors;
+    // 各楼层等候乘客按方向累计的 优先级 × 距离，入队出队时增量维护
+    private final int[] upPriority;
+    private final int[] downPriority;
+    private long seq = 0;
     private ScheRequest nowScheRequest;
     private boolean isEnd = false;
-    private static final int MAX_FLOOR = 7;
-    private static final int MIN_FLOOR = -4;
 
-    public RequestQueue() {
-        personRequests = new PriorityQueue<>(
-                Comparator.comparing(PersonRequest::getPriority).reversed());
-        requestMap = new HashMap<>();
+    public RequestQueue(Building building) {
+        this.maxFloor = building.getMaxFloor();
+        this.minFloor = building.getMinFloor();
+        this.floorRequests = new RequestHeap[building.floorSlots()];
+        this.waitingFloors = new BitSet(floorRequests.length);
+        this.upPriority = new int[floorRequests.length];
+        this.downPriority = new int[floorRequests.length];
+        for (int i = 0; i < floorRequests.length; i++) {
+            floorRequests[i] = new RequestHeap(1);
+        }
     }
 
-    public PriorityQueue<PersonRequest> getRequestsQueue() {
-        return personRequests;
+    public int size() {
+        return personRequests.size();
     }
 
-    public synchronized void myWait() throws InterruptedException {
-        wait();
+    public ScheRequest getScheRequest() {
+        return nowScheRequest;
     }
 
-    public synchronized void myNotify() {
-        notifyAll();
+    public void scheEnd() {
+        nowScheRequest = null;
     }
 
-    public synchronized ScheRequest getScheRequest() {
-        return nowScheRequest;
+    public boolean hasSche() {
+        return nowScheRequest != null;
     }
 
-    public synchronized void scheEnd() {
-        nowScheRequest = null;
+    public void offer(Passenger passenger) {
+        int nowFloor = passenger.getCurFloor();
+        RequestHandle handle = new RequestHandle(passenger, nowFloor, seq++);
+        personRequests.add(handle);
+        floorRequests[nowFloor - minFloor].add(handle);
+        account(handle, 1);
     }
 
-    public synchronized boolean hasSche() {
-        return nowScheRequest != null;
+    public void offer(ScheRequest sr) {
+        nowScheRequest = sr;
     }
 
-    public synchronized void offer(Request r, int nowFloor) {
-        if (r instanceof PersonRequest) {
-            PersonRequest pr = (PersonRequest) r;
-            personRequests.add(pr);
-            if (requestMap.containsKey(nowFloor)) {
-                requestMap.get(nowFloor).add(pr);
-            } else {
-                PriorityQueue<PersonRequest> prs = new PriorityQueue<>(
-                    Comparator.comparing(PersonRequest::getPriority).reversed());
-                prs.add(pr);
-                requestMap.put(nowFloor, prs);
-            }
-        } else if (r instanceof ScheRequest) {
-            nowScheRequest = (ScheRequest) r;
-        } else {
-            System.err.println("Unknown request");
+    public Passenger poll(int floor) {
+        if (!hasRequestAt(floor)) {
+            return null;
         }
-        notifyAll();
+        RequestHandle handle = floorRequests[floor - minFloor].poll();
+        personRequests.remove(handle);
+        account(handle, -1);
+        return handle.getPassenger();
     }
 
-    public synchronized PersonRequest poll(int floor) {
-        while (personRequests.isEmpty() && !isEnd) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+    public Passenger poll() {
+        RequestHandle handle = personRequests.poll();
+        if (handle == null) {
+            return null;
         }
-        if (requestMap.containsKey(floor) && !requestMap.get(floor).isEmpty()) {
-            personRequests.remove(requestMap.get(floor).peek());
-            return requestMap.get(floor).poll();
+        floorRequests[handle.getFloor() - minFloor].remove(handle);
+        account(handle, -1);
+        return handle.getPassenger();
+    }
+
+    // 一次取出全部等候乘客，只清理有乘客的楼层；顺序不定，交回分配线程后按优先级重新排列
+    public List<Passenger> takeAll() {
+        List<Passenger> all = new ArrayList<>(size());
+        personRequests.drainTo(all);
+        for (int s = waitingFloors.nextSetBit(0); s >= 0; s = waitingFloors.nextSetBit(s + 1)) {
+            floorRequests[s].clear();
+            upPriority[s] = 0;
+            downPriority[s] = 0;
+        }
+        waitingFloors.clear();
+        return all;
+    }
+
+    private void account(RequestHandle handle, int sign) {
+        int slot = handle.getFloor() - minFloor;
+        Passenger pr = handle.getPassenger();
+        int weight = sign * pr.getPriority() * Floors.distance(handle.getFloor(), pr.getToFloor());
+        if (pr.getToFloor() > handle.getFloor()) {
+            upPriority[slot] += weight;
         } else {
-            return null;
+            downPriority[slot] += weight;
+        }
+        if (floorRequests[slot].isEmpty()) {
+            waitingFloors.clear(slot);
+        } else {
+            waitingFloors.set(slot);
+        }
+    }
+
+    // 从 curFloor 沿 direction 方向，不含 curFloor 本身，是否还有电梯能到达的候梯楼层
+    public boolean hasWaitingBeyond(int curFloor, int direction, Elevator elevator) {
+        return firstWaiting(curFloor, direction, elevator) != curFloor;
+    }
+
+    private int next(int slot, int direction) {
+        return direction > 0 ? waitingFloors.nextSetBit(slot + 1) :
+            waitingFloors.previousSetBit(slot - 1);
+    }
+
+    // 最近的可到达候梯楼层，两个方向一样近时向上，没有时返回当前楼层
+    public int nearestTargetFloor(int curFloor, Elevator elevator) {
+        int up = firstWaiting(curFloor, 1, elevator);
+        int down = firstWaiting(curFloor, -1, elevator);
+        if (up == curFloor) {
+            return down;
+        } else if (down == curFloor) {
+            return up;
         }
+        return Floors.distance(curFloor, up) <= Floors.distance(curFloor, down) ? up : down;
     }
 
-    public synchronized PersonRequest poll() {
-        PersonRequest pr = personRequests.peek();
-        personRequests.remove(pr);
-        for (int i = MIN_FLOOR; i <= MAX_FLOOR; i++) {
-            if (requestMap.get(i) != null && !requestMap.get(i).isEmpty()) {
-                requestMap.get(i).remove(pr);
+    private int firstWaiting(int curFloor, int direction, Elevator elevator) {
+        int curSlot = curFloor - minFloor;
+        for (int s = next(curSlot, direction); s >= 0; s = next(s, direction)) {
+            if (elevator.canArriveAt(s + minFloor)) {
+                return s + minFloor;
             }
         }
-        return pr;
+        return curFloor;
     }
 
-    public synchronized int nextTargetFloor(int curFloor, Elevator elevator) {
+    public int nextTargetFloor(int curFloor, Elevator elevator) {
         int nextFloor = curFloor;
+        int curSlot = curFloor - minFloor;
         // 向上查找
         boolean upFound = false;
-        for (int i = curFloor + 1; i <= MAX_FLOOR; i++) {
-            if (getRequestsAt(i) != null &&
-                !getRequestsAt(i).isEmpty() && elevator.canArriveAt(i)) {
-                nextFloor = i;
+        for (int s = waitingFloors.nextSetBit(curSlot + 1); s >= 0;
+             s = waitingFloors.nextSetBit(s + 1)) {
+            if (elevator.canArriveAt(s + minFloor)) {
+                nextFloor = s + minFloor;
                 upFound = true;
                 break;
             }
         }
         // 向下查找
-        for (int i = curFloor - 1; i >= MIN_FLOOR; i--) {
-            if (getRequestsAt(i) != null &&
-                !getRequestsAt(i).isEmpty() && elevator.canArriveAt(i)) {
+        for (int s = waitingFloors.previousSetBit(curSlot - 1); s >= 0;
+             s = waitingFloors.previousSetBit(s - 1)) {
+            int i = s + minFloor;
+            if (elevator.canArriveAt(i)) {
                 if (!upFound) {
                     nextFloor = i;
                     break;
@@ -121,62 +176,71 @@ public class RequestQueue {
         return nextFloor;
     }
 
-    public synchronized PriorityQueue<PersonRequest> getRequestsAt(int floor) {
-        // probably return null
-        return requestMap.get(floor);
+    public boolean hasRequestAt(int floor) {
+        return floor >= minFloor && floor <= maxFloor &&
+            !floorRequests[floor - minFloor].isEmpty();
     }
 
-    public synchronized int getComprehensivePriorityAt(int floor) {
-        int sum = 0;
-        if (getRequestsAt(floor) == null || getRequestsAt(floor).isEmpty()) {
-            return 0;
+    // 标记所有有乘客等候的楼层，下标为楼层减去最低层
+    public void markWaitingFloors(boolean[] stops) {
+        for (int s = waitingFloors.nextSetBit(0); s >= 0; s = waitingFloors.nextSetBit(s + 1)) {
+            stops[s] = true;
         }
-        for (PersonRequest pr : getRequestsAt(floor)) {
-            if (intOf(pr.getToFloor()) > floor) {
-                int floorDiff = intOf(pr.getToFloor()) > 0 && floor < 0 ?
-                    intOf(pr.getToFloor()) - floor - 1 :
-                    intOf(pr.getToFloor()) - floor;
-                sum += pr.getPriority() * floorDiff;
-            } else {
-                int floorDiff = floor > 0 && intOf(pr.getToFloor()) < 0 ?
-                    floor - intOf(pr.getToFloor()) - 1 :
-                    floor - intOf(pr.getToFloor());
-                sum += pr.getPriority() * floorDiff;
-            }
-        }
-        return sum;
     }
 
-    public synchronized void setEnd() {
-        isEnd = true;
-        notifyAll();
+    // 该楼层优先级最高的请求，没有时返回 null
+    public Passenger peekAt(int floor) {
+        return hasRequestAt(floor) ? floorRequests[floor - minFloor].peek().getPassenger() : null;
     }
 
-    public synchronized boolean isEnd() {
-        return isEnd;
+    public int getComprehensivePriorityAt(int floor) {
+        if (!hasRequestAt(floor)) {
+            return 0;
+        }
+        return upPriority[floor - minFloor] + downPriority[floor - minFloor];
     }
 
-    public synchronized boolean isEmpty() {
-        if (!personRequests.isEmpty()) {
-            return false;
-        }
-        if (nowScheRequest != null) {
-            return false;
+    // 该楼层向 direction 方向（1 向上，-1 向下）出行的乘客的 优先级 × 距离 之和
+    public int getPriorityAt(int floor, int direction) {
+        if (!hasRequestAt(floor)) {
+            return 0;
         }
-        for (PriorityQueue<PersonRequest> prs : requestMap.values()) {
-            if (!prs.isEmpty()) {
-                return false;
-            }
+        return direction > 0 ? upPriority[floor - minFloor] : downPriority[floor - minFloor];
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeLong(seq);
+        List<RequestHandle> handles = personRequests.handles();
+        out.writeInt(handles.size());
+        for (RequestHandle handle : handles) {
+            out.writeLong(handle.getSeq());
+            handle.getPassenger().save(out);
         }
-        return true;
+        Checkpoint.writeRequest(out, nowScheRequest);
+        out.writeBoolean(isEnd);
     }
 
-    private int intOf(String floor) {
-        if (floor.startsWith("B")) {
-            return (-Integer.parseInt(floor.substring(1)));
-        } else {
-            return (Integer.parseInt(floor.substring(1)));
+    public void restore(DataInputStream in) throws IOException {
+        long next = in.readLong();
+        for (int n = in.readInt(); n > 0; n--) {
+            seq = in.readLong();
+            offer(Passenger.restore(in));
         }
+        seq = next;
+        nowScheRequest = (ScheRequest) Checkpoint.readRequest(in);
+        isEnd = in.readBoolean();
+    }
+
+    public void setEnd() {
+        isEnd = true;
+    }
+
+    public boolean isEnd() {
+        return isEnd;
+    }
+
+    public boolean isEmpty() {
+        return personRequests.isEmpty() && nowScheRequest == null;
     }
 
 }
@@ -0,0 +1,19 @@
+import com.oocourse.elevator3.Request;
+
+public interface SimClock {
+    long now();
+
+    // 等待 millis 毫秒后执行 then；实时模式下直接阻塞当前线程，虚拟时钟模式下登记为后续事件
+    void delay(long millis, Runnable then);
+
+    // 记录一条输出事件，返回其时间戳
+    long log(EventType type, int a, int b, int c);
+
+    // 记录一条到达的输入请求，开启追踪时写入追踪文件
+    default void record(Request request) {
+    }
+
+    default boolean isVirtual() {
+        return false;
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Simulation {
+    private final VirtualClock clock;
+    private final Building building;
+    private final Dispatch dispatch;
+    private final Elevator[] elevators;
+    private final boolean[] busy;
+    private final long[] stalledAt;
+    // 每发生一次会改变系统状态的事件加一，空转的电梯只有在之后有新进展时才会被重新调度
+    private long progress = 0;
+    private List<TimedRequest> requests;
+    // 从检查点恢复的事件队列，由 run 按原先的执行顺序重新登记
+    private List<Timed> restored;
+    // 执行完该时刻及之前的所有事件后写出检查点
+    private long checkpointAt = -1;
+    private Path checkpointPath;
+
+    public Simulation(VirtualClock clock, Building building, Policy policy) {
+        this.clock = clock;
+        this.building = building;
+        this.elevators = new Elevator[building.getCars() + 1];
+        this.dispatch = new Dispatch(elevators, clock, policy);
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i] = new Elevator(i, dispatch, elevators, clock, building);
+        }
+        this.busy = new boolean[elevators.length];
+        this.stalledAt = new long[elevators.length];
+        for (int i = 0; i < stalledAt.length; i++) {
+            stalledAt[i] = -1;
+        }
+    }
+
+    public void setCheckpoint(long at, Path path) {
+        this.checkpointAt = at;
+        this.checkpointPath = path;
+    }
+
+    // 从检查点恢复的模拟只运行检查点中尚未执行的事件，requests 须与写出检查点时相同
+    public void run(List<TimedRequest> requests) {
+        this.requests = requests;
+        if (restored != null) {
+            for (Timed timed : restored) {
+                clock.schedule(timed.time, timed);
+            }
+            restored = null;
+        } else {
+            long lastTime = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                long time = requests.get(i).getTime();
+                lastTime = Math.max(lastTime, time);
+                clock.schedule(time, new Timed(Kind.INPUT, i, time, null));
+            }
+            clock.schedule(lastTime, new Timed(Kind.INPUT_END, 0, lastTime, null));
+        }
+        while (clock.hasNext()) {
+            if (checkpointAt >= 0 && clock.peekTime() > checkpointAt) {
+                writeCheckpoint();
+            }
+            clock.runNext();
+            pump();
+        }
+        // 运行在该时刻之前就已结束时写出结束时的状态
+        if (checkpointAt >= 0) {
+            writeCheckpoint();
+        }
+    }
+
+    private void writeCheckpoint() {
+        try {
+            Checkpoint.write(checkpointPath, this);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        checkpointAt = -1;
+    }
+
+    // 在两个事件之间写出，此时没有未取走的后续动作，电梯与改造任务进行中的动作都在事件队列中
+    public void save(DataOutputStream out) throws IOException {
+        out.writeLong(clock.now());
+        out.writeLong(progress);
+        Checkpoint.writeBuilding(out, building);
+        Map<Integer, UpdateTask> tasks = new LinkedHashMap<>();
+        dispatch.collectUpdates(tasks);
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i].collectUpdates(tasks);
+        }
+        out.writeInt(tasks.size());
+        for (UpdateTask task : tasks.values()) {
+            task.save(out);
+        }
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i].save(out);
+            out.writeBoolean(busy[i]);
+            out.writeLong(stalledAt[i]);
+        }
+        dispatch.save(out);
+        List<Runnable> pending = clock.pending();
+        out.writeInt(pending.size());
+        for (Runnable action : pending) {
+            Timed timed = (Timed) action;
+            out.writeByte(timed.kind.ordinal());
+            out.writeInt(timed.index);
+            out.writeLong(timed.time);
+        }
+    }
+
+    public static Simulation restore(DataInputStream in, VirtualClock clock, Policy policy)
+        throws IOException {
+        clock.advanceTo(in.readLong());
+        long progress = in.readLong();
+        Simulation simulation = new Simulation(clock, Checkpoint.readBuilding(in), policy);
+        simulation.progress = progress;
+        Elevator[] elevators = simulation.elevators;
+        Map<Integer, UpdateTask> tasks = new LinkedHashMap<>();
+        for (int n = in.readInt(); n > 0; n--) {
+            UpdateTask task = UpdateTask.restore(in, elevators, clock, simulation.getMetrics());
+            tasks.put(task.getRequest().getElevatorAId(), task);
+        }
+        for (int i = 1; i < elevators.length; i++) {
+            elevators[i].restore(in, tasks);
+            simulation.busy[i] = in.readBoolean();
+            simulation.stalledAt[i] = in.readLong();
+        }
+        simulation.dispatch.restore(in, tasks);
+        Kind[] kinds = Kind.values();
+        simulation.restored = new ArrayList<>();
+        for (int n = in.readInt(); n > 0; n--) {
+            Kind kind = kinds[in.readByte()];
+            int index = in.readInt();
+            long time = in.readLong();
+            Runnable next = kind == Kind.CAR ? elevators[index]::resume :
+                kind == Kind.UPDATE ? tasks.get(index)::end : null;
+            simulation.restored.add(simulation.new Timed(kind, index, time, next));
+        }
+        return simulation;
+    }
+
+    public Metrics getMetrics() {
+        return dispatch.getMetrics();
+    }
+
+    private void pump() {
+        if (dispatch.hasStateChanged()) {
+            dispatch.dispatchPass();
+        }
+        for (UpdateTask task : dispatch.takeReadyUpdates()) {
+            progress++;
+            runChain(task::begin, Kind.UPDATE, task.getRequest().getElevatorAId());
+        }
+        for (int i = 1; i < elevators.length; i++) {
+            Elevator elevator = elevators[i];
+            if (busy[i] || elevator.isFinished() || elevator.shouldWait() ||
+                stalledAt[i] >= progress) {
+                continue;
+            }
+            busy[i] = true;
+            clock.schedule(clock.now(), new Timed(Kind.STEP, i, clock.now(), null));
+        }
+    }
+
+    private void stepElevator(int index) {
+        elevators[index].step();
+        if (!clock.hasContinuation()) {
+            // 本次没有产生任何动作，等待其他事件改变状态后再尝试
+            busy[index] = false;
+            stalledAt[index] = progress;
+            return;
+        }
+        progress++;
+        stalledAt[index] = -1;
+        scheduleContinuation(Kind.CAR, index);
+    }
+
+    private void runChain(Runnable action, Kind kind, int index) {
+        action.run();
+        scheduleContinuation(kind, index);
+    }
+
+    private void scheduleContinuation(Kind kind, int index) {
+        if (clock.hasContinuation()) {
+            long time = clock.getContinuationTime();
+            clock.schedule(time, new Timed(kind, index, time, clock.takeContinuation()));
+        } else if (kind == Kind.CAR) {
+            busy[index] = false;
+        }
+    }
+
+    // 事件队列中的动作种类：输入、输入结束、电梯执行一步、电梯动作与改造的后续
+    private enum Kind { INPUT, INPUT_END, STEP, CAR, UPDATE }
+
+    // 事件队列中的一个动作，记下种类与参数（输入下标、电梯编号或改造的 A 电梯编号），写入检查点后可重建；
+    // 后续动作由电梯与改造任务自己记录要做什么，恢复时重新取得
+    private final class Timed implements Runnable {
+        private final Kind kind;
+        private final int index;
+        private final long time;
+        private final Runnable next;
+
+        private Timed(Kind kind, int index, long time, Runnable next) {
+            this.kind = kind;
+            this.index = index;
+            this.time = time;
+            this.next = next;
+        }
+
+        @Override
+        public void run() {
+            switch (kind) {
+                case INPUT:
+                    progress++;
+                    dispatch.offer(requests.get(index).getRequest());
+                    break;
+                case INPUT_END:
+                    progress++;
+                    dispatch.setInputIsEnd();
+                    break;
+                case STEP:
+                    stepElevator(index);
+                    break;
+                default:
+                    progress++;
+                    runChain(next, kind, index);
+                    break;
+            }
+        }
+    }
+}
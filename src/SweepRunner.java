@@ -0,0 +1,219 @@
+import com.oocourse.elevator3.PersonRequest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// 参数扫描：对若干流量记录与参数取值的全部组合，在同一个 JVM 中用 fork-join 并行运行互相独立的虚拟时钟模拟，
+// 按参数组合汇总运行时间、加权等待时间与电耗。参数都以逗号分隔的取值给出：
+//   -Delevator.sweep.strategy=eta,nearest  -Delevator.sweep.rearrange=3,5,8
+//   -Delevator.sweep.spare=0,4  -Delevator.sweep.capacity=6,8  -Delevator.sweep.threads=<并行数>
+// 未给出的参数取 -Delevator.strategy 等单次运行的配置；其余拓扑同 Building.fromProperties
+// 用法：java SweepRunner <流量文件>...，文件可以是带时间戳的输入或 -Delevator.trace 写出的追踪文件
+public class SweepRunner {
+    private final List<List<TimedRequest>> traces;
+    private final List<String> strategies = new ArrayList<>();
+    private final List<Integer> rearrangeFactors = new ArrayList<>();
+    private final List<Integer> spareLoads = new ArrayList<>();
+    private final List<Integer> capacities = new ArrayList<>();
+    private final Building building;
+    private final Policy policy;
+    // -Delevator.verify：每次模拟都经过输出校验
+    private final boolean verify;
+
+    public SweepRunner(List<List<TimedRequest>> traces, Building building, Policy policy) {
+        this.traces = traces;
+        this.building = building;
+        this.policy = policy;
+        this.verify = Boolean.getBoolean("elevator.verify");
+        strategies.addAll(Arrays.asList(
+            values("strategy", System.getProperty("elevator.strategy", "eta"))));
+        for (String value : values("rearrange", String.valueOf(policy.getRearrangeFactor()))) {
+            rearrangeFactors.add(Integer.parseInt(value));
+        }
+        for (String value : values("spare", String.valueOf(policy.getSpareLoad()))) {
+            spareLoads.add(Integer.parseInt(value));
+        }
+        for (String value : values("capacity", String.valueOf(building.getCapacity()))) {
+            capacities.add(Integer.parseInt(value));
+        }
+    }
+
+    private static String[] values(String name, String fallback) {
+        String[] values = System.getProperty("elevator.sweep." + name, fallback).split(",");
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim();
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: java SweepRunner <trace>...");
+            return;
+        }
+        List<List<TimedRequest>> traces = new ArrayList<>();
+        for (String arg : args) {
+            traces.add(load(Paths.get(arg)));
+        }
+        SweepRunner runner = new SweepRunner(traces, Building.fromProperties(),
+            Policy.fromProperties());
+        int threads = Integer.getInteger("elevator.sweep.threads",
+            Runtime.getRuntime().availableProcessors());
+        runner.run(threads).forEach(System.out::println);
+    }
+
+    // 追踪文件以 TraceWriter.MAGIC 开头，其余按带时间戳的文本输入读取
+    private static List<TimedRequest> load(Path path) throws IOException {
+        int magic;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            magic = in.available() >= 4 ? in.readInt() : 0;
+        }
+        if (magic == TraceWriter.MAGIC) {
+            return new TraceReader(path).getRequests();
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return TimedRequest.readAll(in);
+        }
+    }
+
+    // 返回每个参数组合一行汇总，顺序与参数取值的给出顺序一致
+    public List<String> run(int threads) {
+        List<Config> configs = new ArrayList<>();
+        for (String strategy : strategies) {
+            for (int rearrange : rearrangeFactors) {
+                for (int spare : spareLoads) {
+                    for (int capacity : capacities) {
+                        configs.add(new Config(strategy, rearrange, spare, capacity));
+                    }
+                }
+            }
+        }
+        Result[] results = new Result[configs.size() * traces.size()];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Batch(configs, results, 0, results.length));
+        } finally {
+            pool.shutdown();
+        }
+        List<String> lines = new ArrayList<>();
+        for (int c = 0; c < configs.size(); c++) {
+            lines.add(summarize(configs.get(c), results, c * traces.size(), traces.size(),
+                verify));
+        }
+        return lines;
+    }
+
+    private Result simulate(Config config, List<TimedRequest> requests) {
+        VirtualClock clock = new VirtualClock(null);
+        Building sized = building.withCapacity(config.capacity);
+        Verifier verifier = verify ? new Verifier(sized, 0) : null;
+        clock.setVerifier(verifier);
+        Simulation simulation = new Simulation(clock, sized,
+            policy.withStrategy(DispatchStrategy.of(config.strategy))
+                .withRearrangeFactor(config.rearrange).withSpareLoad(config.spare));
+        simulation.run(requests);
+        Metrics metrics = simulation.getMetrics();
+        int persons = 0;
+        for (TimedRequest tr : requests) {
+            if (tr.getRequest() instanceof PersonRequest) {
+                persons++;
+            }
+        }
+        return new Result(metrics.getOfferToArrive().getCount() == persons, clock.now() / 1000.0,
+            metrics.getWeightedWait(), metrics.getEnergy(),
+            verifier == null ? 0 : verifier.getViolationCount());
+    }
+
+    private static String summarize(Config config, Result[] results, int from, int count,
+        boolean verify) {
+        double time = 0;
+        double wait = 0;
+        double maxWait = 0;
+        double energy = 0;
+        int unfinished = 0;
+        long violations = 0;
+        for (int i = from; i < from + count; i++) {
+            Result r = results[i];
+            time += r.time;
+            wait += r.wait;
+            maxWait = Math.max(maxWait, r.wait);
+            energy += r.energy;
+            unfinished += r.finished ? 0 : 1;
+            violations += r.violations;
+        }
+        String line = String.format("%s rearrange=%d spare=%d capacity=%d runs=%d unfinished=%d " +
+            "T=%.2f W=%.3f Wmax=%.3f E=%.1f", config.strategy, config.rearrange, config.spare,
+            config.capacity, count, unfinished, time / count, wait / count, maxWait,
+            energy / count);
+        // 开启校验时附上各次运行的违规总数
+        return verify ? line + " violations=" + violations : line;
+    }
+
+    // 每次模拟是一个叶子任务，区间对半拆分，由工作窃取在各线程间平衡不同长度的模拟
+    private final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        // 任务只在本进程内执行，不会被序列化
+        private final transient List<Config> configs;
+        private final transient Result[] results;
+        private final int from;
+        private final int to;
+
+        private Batch(List<Config> configs, Result[] results, int from, int to) {
+            this.configs = configs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = simulate(configs.get(from / traces.size()),
+                    traces.get(from % traces.size()));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Batch(configs, results, from, mid), new Batch(configs, results, mid, to));
+        }
+    }
+
+    private static final class Config {
+        private final String strategy;
+        private final int rearrange;
+        private final int spare;
+        private final int capacity;
+
+        private Config(String strategy, int rearrange, int spare, int capacity) {
+            this.strategy = strategy;
+            this.rearrange = rearrange;
+            this.spare = spare;
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Result {
+        private final boolean finished;
+        private final double time;
+        private final double wait;
+        private final double energy;
+        private final long violations;
+
+        private Result(boolean finished, double time, double wait, double energy,
+            long violations) {
+            this.finished = finished;
+            this.time = time;
+            this.wait = wait;
+            this.energy = energy;
+            this.violations = violations;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// 实时模式下电梯、分配、输入线程与改造任务的创建方式：默认为平台线程，-Delevator.threads=virtual 时
+// 全部运行在虚拟线程上，载体线程数只取决于 CPU 核数，不随电梯数量增长；
+// 虚拟线程需要 JDK 21，这里通过反射创建，源码仍可在较早的 JDK 上编译
+public final class Threads {
+    // 为 null 时使用平台线程
+    private final ThreadFactory virtualFactory;
+
+    private Threads(ThreadFactory virtualFactory) {
+        this.virtualFactory = virtualFactory;
+    }
+
+    public static Threads platform() {
+        return new Threads(null);
+    }
+
+    public static Threads virtual() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            return new Threads((ThreadFactory) builderType.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual threads need JDK 21 or later", e);
+        }
+    }
+
+    public static Threads fromProperties() {
+        String mode = System.getProperty("elevator.threads", "platform");
+        if ("virtual".equals(mode)) {
+            return virtual();
+        }
+        if (!"platform".equals(mode)) {
+            throw new IllegalArgumentException("elevator.threads must be platform or virtual");
+        }
+        return platform();
+    }
+
+    public boolean isVirtual() {
+        return virtualFactory != null;
+    }
+
+    public Thread start(Runnable task, String name) {
+        Thread thread = virtualFactory == null ? new Thread(task) : virtualFactory.newThread(task);
+        thread.setName(name);
+        thread.start();
+        return thread;
+    }
+
+    // 虚拟线程不必池化，每个改造任务一个线程
+    public ExecutorService newExecutor() {
+        if (virtualFactory == null) {
+            return Executors.newCachedThreadPool();
+        }
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, virtualFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
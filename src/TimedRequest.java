@@ -0,0 +1,70 @@
+import com.oocourse.elevator3.ElevatorInput;
+import com.oocourse.elevator3.Request;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimedRequest {
+    private final long time;
+    private final Request request;
+
+    public TimedRequest(long time, Request request) {
+        this.time = time;
+        this.request = request;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    // 读取带时间戳的输入，例如 "[1.0]1-PRI-15-FROM-B2-TO-F5"，请求本身仍交给 ElevatorInput 解析
+    public static List<TimedRequest> readAll(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Long> times = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            long time = 0;
+            if (line.startsWith("[")) {
+                int end = line.indexOf(']');
+                time = Math.round(Double.parseDouble(line.substring(1, end).trim()) * 1000);
+                line = line.substring(end + 1);
+            }
+            times.add(time);
+            body.append(line).append('\n');
+        }
+        return parse(times, body);
+    }
+
+    // body 为不带时间戳的输入行，每行对应 times 中的一个到达时间
+    public static List<TimedRequest> parse(List<Long> times, CharSequence body)
+        throws IOException {
+        List<TimedRequest> requests = new ArrayList<>();
+        ElevatorInput input = new ElevatorInput(new ByteArrayInputStream(
+            body.toString().getBytes(StandardCharsets.UTF_8)));
+        for (Long time : times) {
+            Request request = input.nextRequest();
+            if (request == null) {
+                break;
+            }
+            requests.add(new TimedRequest(time, request));
+        }
+        input.close();
+        return requests;
+    }
+}
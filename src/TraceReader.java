@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// 读取 TraceWriter 写出的追踪文件：输入请求按原到达时间交给虚拟时钟回放，记录的事件可还原为文本输出
+public class TraceReader {
+    private final List<Long> inputTimes = new ArrayList<>();
+    private final StringBuilder inputs = new StringBuilder();
+    private final StringBuilder events = new StringBuilder();
+
+    public TraceReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != TraceWriter.MAGIC ||
+                buffer.getInt() != TraceWriter.VERSION) {
+                throw new IOException("not an elevator trace: " + path);
+            }
+            EventType[] types = EventType.values();
+            while (buffer.hasRemaining()) {
+                byte kind = buffer.get();
+                if (kind == 0) {
+                    // 写出进程没有正常关闭，其后是映射块中未写的部分
+                    break;
+                }
+                if (kind == TraceWriter.INPUT) {
+                    inputTimes.add((long) buffer.getInt());
+                    byte[] text = new byte[buffer.getShort()];
+                    buffer.get(text);
+                    inputs.append(new String(text, StandardCharsets.UTF_8)).append('\n');
+                } else if (kind == TraceWriter.EVENT) {
+                    EventType type = types[buffer.get()];
+                    type.appendTo(events, buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt());
+                } else {
+                    throw new IOException("corrupt trace record at " + (buffer.position() - 1));
+                }
+            }
+        }
+    }
+
+    public List<TimedRequest> getRequests() throws IOException {
+        return TimedRequest.parse(inputTimes, inputs);
+    }
+
+    public void printEvents(PrintStream out) {
+        out.print(events);
+        out.flush();
+    }
+}
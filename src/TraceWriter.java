@@ -0,0 +1,92 @@
+import com.oocourse.elevator3.Request;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// 二进制追踪文件：记录每条输入请求及其到达时间和每条输出事件，通过按块映射的内存追加写入，关闭时截去未用部分；
+// 格式为文件头 magic、version，之后是若干条记录：
+//   输入  kind=1 | time:int | length:short | 请求文本（UTF-8，与输入行相同，不含时间戳）
+//   事件  kind=2 | type:byte | time:int | a:int | b:int | c:int
+// 时间为相对启动时刻的毫秒数。每条记录先写内容、最后写 kind，进程被强行结束时未截断的映射块中
+// 未写部分全为 0，读取时遇到 kind=0 即视为数据结束
+public class TraceWriter {
+    static final int MAGIC = 0x454c5452;
+    static final int VERSION = 1;
+    static final byte INPUT = 1;
+    static final byte EVENT = 2;
+    private static final long chunk = 1 << 20;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    // 当前映射块在文件中的起始位置
+    private long mappedAt;
+
+    public TraceWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        map(0);
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    // 通过 -Delevator.trace=<文件> 打开，未给出时返回 null
+    public static TraceWriter fromProperties() throws IOException {
+        String path = System.getProperty("elevator.trace");
+        return path == null ? null : new TraceWriter(Paths.get(path));
+    }
+
+    public synchronized void input(long time, Request request) {
+        byte[] text = request.toString().getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 4 + 2 + text.length);
+        int start = skipKind();
+        buffer.putInt((int) time).putShort((short) text.length).put(text);
+        buffer.put(start, INPUT);
+    }
+
+    public synchronized void event(EventType type, long time, int a, int b, int c) {
+        reserve(1 + 1 + 4 * 4);
+        int start = skipKind();
+        buffer.put((byte) type.ordinal()).putInt((int) time).putInt(a).putInt(b).putInt(c);
+        buffer.put(start, EVENT);
+    }
+
+    public synchronized void close() {
+        try {
+            long length = mappedAt + buffer.position();
+            buffer.force();
+            buffer = null;
+            channel.truncate(length);
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 留出 kind 的位置，返回其下标
+    private int skipKind() {
+        int start = buffer.position();
+        buffer.position(start + 1);
+        return start;
+    }
+
+    // 当前块剩余空间不足时从已写位置起映射下一块
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            buffer.force();
+            map(mappedAt + buffer.position());
+        }
+    }
+
+    private void map(long position) {
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, chunk);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        mappedAt = position;
+    }
+}
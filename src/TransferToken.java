@@ -0,0 +1,96 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 改造后同一井道的两部电梯共用的换乘层占用令牌：驶入换乘层前取得，离开后归还。
+// 取不到的电梯登记为等待方后在自己的邮箱上等待，归还时只唤醒登记的那一部，并记录交接用时
+public class TransferToken {
+    private final Elevator[] elevators;
+    private final SimClock clock;
+    private final Metrics metrics;
+    // 持有者的电梯编号，0 表示空闲
+    private final AtomicInteger holder = new AtomicInteger();
+    private volatile int waiter = 0;
+    // 等待方的登记时刻与持有者最近一次归还的时刻，归还晚于登记才计入交接用时
+    private volatile long waitingSince;
+    private volatile long releasedAt = -1;
+
+    public TransferToken(Elevator[] elevators, SimClock clock, Metrics metrics) {
+        this.elevators = elevators;
+        this.clock = clock;
+        this.metrics = metrics;
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(holder.get());
+        out.writeInt(waiter);
+        out.writeLong(waitingSince);
+        out.writeLong(releasedAt);
+    }
+
+    public void restore(DataInputStream in) throws IOException {
+        holder.set(in.readInt());
+        waiter = in.readInt();
+        waitingSince = in.readLong();
+        releasedAt = in.readLong();
+    }
+
+    private boolean isFreeFor(int id) {
+        int h = holder.get();
+        return h == 0 || h == id;
+    }
+
+    // 规划时查询，不占用令牌；不空闲时登记为等待方，对方归还时会唤醒本电梯
+    public boolean checkFree(int id) {
+        if (isFreeFor(id)) {
+            return true;
+        }
+        register(id);
+        return isFreeFor(id);
+    }
+
+    // 先登记为等待方再重试一次：与 release 先归还再读取等待方配合，对方在两次尝试之间归还也不会错过唤醒
+    public boolean tryAcquire(int id) {
+        if (holder.get() == id || holder.compareAndSet(0, id)) {
+            acquired(id);
+            return true;
+        }
+        register(id);
+        if (holder.compareAndSet(0, id)) {
+            acquired(id);
+            return true;
+        }
+        return false;
+    }
+
+    private void register(int id) {
+        if (waiter != id) {
+            waitingSince = clock.now();
+            waiter = id;
+        }
+    }
+
+    private void acquired(int id) {
+        if (waiter != id) {
+            return;
+        }
+        waiter = 0;
+        long since = releasedAt;
+        if (since >= waitingSince) {
+            metrics.transferHandedOff(clock.now() - since);
+        }
+    }
+
+    public void release(int id) {
+        if (holder.get() != id) {
+            return;
+        }
+        releasedAt = clock.now();
+        holder.set(0);
+        int w = waiter;
+        if (w != 0 && w != id) {
+            elevators[w].transferFreed();
+        }
+    }
+}
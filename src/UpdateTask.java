@@ -0,0 +1,80 @@
+import com.oocourse.elevator3.UpdateRequest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+public class UpdateTask implements Runnable {
+    private static final long updateTime = 1000;
+    private final UpdateRequest ur;
+    private final Elevator elevatorA;
+    private final Elevator elevatorB;
+    private final SimClock clock;
+    private final TransferToken token;
+    // 两部电梯各自清空轿厢后计数一次
+    private final CountDownLatch cleared = new CountDownLatch(2);
+
+    public UpdateTask(UpdateRequest ur, Elevator[] elevators, SimClock clock, Metrics metrics) {
+        this.ur = ur;
+        this.elevatorA = elevators[ur.getElevatorAId()];
+        this.elevatorB = elevators[ur.getElevatorBId()];
+        this.clock = clock;
+        this.token = new TransferToken(elevators, clock, metrics);
+    }
+
+    public UpdateRequest getRequest() {
+        return ur;
+    }
+
+    public TransferToken getToken() {
+        return token;
+    }
+
+    public void insideCleared() {
+        cleared.countDown();
+    }
+
+    public boolean isReady() {
+        return cleared.getCount() == 0;
+    }
+
+    public void begin() {
+        clock.log(EventType.UPDATE_BEGIN, ur.getElevatorAId(), ur.getElevatorBId(), 0);
+        clock.delay(updateTime, this::end);
+    }
+
+    // 改造用时结束；从检查点恢复时由 Simulation 重新登记
+    public void end() {
+        clock.log(EventType.UPDATE_END, ur.getElevatorAId(), ur.getElevatorBId(), 0);
+        elevatorA.updateDone();
+        elevatorB.updateDone();
+    }
+
+    public void save(DataOutputStream out) throws IOException {
+        Checkpoint.writeRequest(out, ur);
+        out.writeLong(cleared.getCount());
+        token.save(out);
+    }
+
+    public static UpdateTask restore(DataInputStream in, Elevator[] elevators, SimClock clock,
+        Metrics metrics) throws IOException {
+        UpdateTask task = new UpdateTask((UpdateRequest) Checkpoint.readRequest(in), elevators,
+            clock, metrics);
+        for (long count = in.readLong(); task.cleared.getCount() > count; ) {
+            task.cleared.countDown();
+        }
+        task.token.restore(in);
+        return task;
+    }
+
+    @Override
+    public void run() {
+        try {
+            cleared.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        begin();
+    }
+}
@@ -0,0 +1,438 @@
+import com.oocourse.elevator3.PersonRequest;
+import com.oocourse.elevator3.Request;
+import com.oocourse.elevator3.ScheRequest;
+import com.oocourse.elevator3.UpdateRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 进程内的流式输出校验与评分：按输出顺序消费输入请求与输出事件，检查载客量、开关门时长、运行速度、
+// 临时调度与改造的规则，结束时给出运行时间 T、电耗 E、按优先级加权的平均完成时间 W 与违规情况。
+// 只为尚未到达的乘客和每部电梯保留状态，乘客到达后即丢弃
+public class Verifier {
+    private static final long doorTime = 400;
+    private static final long scheStopTime = 1000;
+    private static final long updateTime = 1000;
+    // 临时调度与改造须在请求输入后这段时间内结束
+    private static final long requestDeadline = 6000;
+    // 最多保留的违规描述条数，超出的只计数
+    private static final int keptViolations = 20;
+    // 实时模式下时间戳取自系统时钟，允许 1ms 的误差
+    private final long slack;
+    private final Building building;
+    private final Car[] cars;
+    private final Map<Integer, Rider> riders = new HashMap<>();
+    private final List<String> violations = new ArrayList<>();
+    private long violationCount = 0;
+    private long lastTime = 0;
+    private long arrives = 0;
+    private long doors = 0;
+    private long weightedTime = 0;
+    private long prioritySum = 0;
+
+    public Verifier(Building building, long slack) {
+        this.building = building;
+        this.slack = slack;
+        this.cars = new Car[building.getCars() + 1];
+        for (int i = 1; i < cars.length; i++) {
+            cars[i] = new Car(building.getStartFloor(), building.getMinFloor(),
+                building.getMaxFloor(), building.getTimePerFloor(i));
+        }
+    }
+
+    // 通过 -Delevator.verify=true 开启，未开启时返回 null
+    public static Verifier fromProperties(Building building, boolean virtual) {
+        return Boolean.getBoolean("elevator.verify") ? new Verifier(building, virtual ? 0 : 1) :
+            null;
+    }
+
+    public synchronized void input(long time, Request request) {
+        if (request instanceof PersonRequest) {
+            PersonRequest pr = (PersonRequest) request;
+            riders.put(pr.getPersonId(), new Rider(Floors.parse(pr.getFromFloor()),
+                Floors.parse(pr.getToFloor()), pr.getPriority(), time));
+        } else if (request instanceof ScheRequest) {
+            ScheRequest sr = (ScheRequest) request;
+            Car car = cars[sr.getElevatorId()];
+            car.scheTarget = Floors.parse(sr.getToFloor());
+            car.scheSpeed = (long) (sr.getSpeed() * 1000);
+            car.requestedAt = time;
+            car.arrivesSinceRequest = 0;
+        } else if (request instanceof UpdateRequest) {
+            UpdateRequest ur = (UpdateRequest) request;
+            int transfer = Floors.parse(ur.getTransferFloor());
+            for (int id : new int[] {ur.getElevatorAId(), ur.getElevatorBId()}) {
+                cars[id].updateTransfer = transfer;
+                cars[id].requestedAt = time;
+                cars[id].arrivesSinceRequest = 0;
+            }
+        }
+    }
+
+    public synchronized void event(EventType type, long time, int a, int b, int c) {
+        if (time < lastTime) {
+            violation(time, "time goes backwards");
+        }
+        lastTime = Math.max(lastTime, time);
+        switch (type) {
+            case ARRIVE:
+                arrive(time, a, b);
+                break;
+            case OPEN:
+                open(time, a, b);
+                break;
+            case CLOSE:
+                close(time, a, b);
+                break;
+            case IN:
+                in(time, a, b, c);
+                break;
+            case OUT_S:
+            case OUT_F:
+                out(time, a, b, c, type == EventType.OUT_S);
+                break;
+            case RECEIVE:
+                receive(time, a, b);
+                break;
+            case SCHE_BEGIN:
+                scheBegin(time, a);
+                break;
+            case SCHE_END:
+                scheEnd(time, a);
+                break;
+            case UPDATE_BEGIN:
+                updateBegin(time, a, b);
+                break;
+            case UPDATE_END:
+                updateEnd(time, a, b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void arrive(long time, int floor, int id) {
+        Car car = cars[id];
+        arrives++;
+        if (car.doorOpen) {
+            violation(time, "elevator " + id + " moves with door open");
+        }
+        if (car.inUpdate) {
+            violation(time, "elevator " + id + " moves during UPDATE");
+        }
+        // 除临时调度与改造后离开换乘层外，电梯须有已接收或在轿厢内的乘客才能移动
+        if (!car.inSche && car.load == 0 && car.receiving.isEmpty() &&
+            (car.transfer == 0 || car.floor != car.transfer)) {
+            violation(time, "elevator " + id + " moves without RECEIVE");
+        }
+        if (Floors.distance(car.floor, floor) != 1 || floor == 0) {
+            violation(time, "elevator " + id + " jumps from " + Floors.format(car.floor) +
+                " to " + Floors.format(floor));
+        }
+        if (floor < car.minFloor || floor > car.maxFloor) {
+            violation(time, "elevator " + id + " leaves its range at " + Floors.format(floor));
+        }
+        long speed = car.inSche ? car.scheSpeed : car.speed;
+        if (time - car.departedAt + slack < speed) {
+            violation(time, "elevator " + id + " moves faster than " + speed + "ms per floor");
+        }
+        if (car.partner != 0 && floor == car.transfer && cars[car.partner].floor == floor) {
+            violation(time, "elevators " + id + " and " + car.partner + " meet at " +
+                Floors.format(floor));
+        }
+        if (car.scheTarget != 0 && !car.inSche || car.updateTransfer != 0 && !car.inUpdate) {
+            if (++car.arrivesSinceRequest > 2) {
+                violation(time, "elevator " + id + " arrives more than twice before starting " +
+                    (car.scheTarget != 0 ? "SCHE" : "UPDATE"));
+            }
+        }
+        car.floor = floor;
+        car.departedAt = time;
+    }
+
+    private void open(long time, int floor, int id) {
+        Car car = cars[id];
+        doors++;
+        if (car.doorOpen || car.floor != floor) {
+            violation(time, "elevator " + id + " opens at " + Floors.format(floor) +
+                " while door open or elsewhere");
+        }
+        if (car.inUpdate) {
+            violation(time, "elevator " + id + " opens during UPDATE");
+        }
+        if (car.inSche && floor != car.scheTarget) {
+            violation(time, "elevator " + id + " opens away from its SCHE target");
+        }
+        car.doorOpen = true;
+        car.openedAt = time;
+    }
+
+    private void close(long time, int floor, int id) {
+        Car car = cars[id];
+        doors++;
+        if (!car.doorOpen || car.floor != floor) {
+            violation(time, "elevator " + id + " closes at " + Floors.format(floor) +
+                " without an open door there");
+        }
+        long minimum = car.inSche ? scheStopTime : doorTime;
+        if (time - car.openedAt + slack < minimum) {
+            violation(time, "elevator " + id + " closes after less than " + minimum + "ms");
+        }
+        car.doorOpen = false;
+        car.departedAt = time;
+    }
+
+    private void in(long time, int person, int floor, int id) {
+        Car car = cars[id];
+        Rider rider = riders.get(person);
+        if (rider == null || rider.inside != 0 || rider.floor != floor) {
+            violation(time, "passenger " + person + " boards elevator " + id + " at " +
+                Floors.format(floor) + " without waiting there");
+            return;
+        }
+        if (!car.doorOpen || car.floor != floor || car.inSche) {
+            violation(time, "passenger " + person + " boards elevator " + id +
+                " without an open door");
+        }
+        if (rider.receivedBy != id) {
+            violation(time, "passenger " + person + " boards elevator " + id +
+                " without RECEIVE");
+        }
+        if (++car.load > building.getCapacity()) {
+            violation(time, "elevator " + id + " exceeds capacity");
+        }
+        if (rider.receivedBy != 0) {
+            cars[rider.receivedBy].receiving.remove(person);
+        }
+        rider.inside = id;
+    }
+
+    private void out(long time, int person, int floor, int id, boolean success) {
+        Car car = cars[id];
+        Rider rider = riders.get(person);
+        if (rider == null || rider.inside != id) {
+            violation(time, "passenger " + person + " leaves elevator " + id +
+                " without being inside");
+            return;
+        }
+        if (!car.doorOpen || car.floor != floor) {
+            violation(time, "passenger " + person + " leaves elevator " + id +
+                " without an open door");
+        }
+        if (success != (floor == rider.toFloor)) {
+            violation(time, "passenger " + person + (success ? " OUT-S" : " OUT-F") + " at " +
+                Floors.format(floor) + " with destination " + Floors.format(rider.toFloor));
+        }
+        car.load--;
+        if (success && floor == rider.toFloor) {
+            riders.remove(person);
+            weightedTime += rider.priority * (time - rider.requestedAt);
+            prioritySum += rider.priority;
+            return;
+        }
+        rider.inside = 0;
+        rider.receivedBy = 0;
+        rider.floor = floor;
+    }
+
+    private void receive(long time, int person, int id) {
+        Car car = cars[id];
+        Rider rider = riders.get(person);
+        if (rider == null || rider.inside != 0 || rider.receivedBy != 0) {
+            violation(time, "passenger " + person + " received by elevator " + id +
+                " while not free");
+            return;
+        }
+        if (car.inSche || car.inUpdate) {
+            violation(time, "elevator " + id + " receives during SCHE or UPDATE");
+        }
+        rider.receivedBy = id;
+        car.receiving.add(person);
+    }
+
+    private void scheBegin(long time, int id) {
+        Car car = cars[id];
+        if (car.scheTarget == 0 || car.inSche) {
+            violation(time, "elevator " + id + " begins SCHE without a request");
+        }
+        if (car.doorOpen) {
+            violation(time, "elevator " + id + " begins SCHE with door open");
+        }
+        car.inSche = true;
+        cancelReceives(id);
+    }
+
+    private void scheEnd(long time, int id) {
+        Car car = cars[id];
+        if (!car.inSche || car.floor != car.scheTarget || car.doorOpen || car.load != 0) {
+            violation(time, "elevator " + id + " ends SCHE away from its target, " +
+                "with door open or with passengers");
+        }
+        if (time - car.requestedAt > requestDeadline + slack) {
+            violation(time, "elevator " + id + " ends SCHE more than " + requestDeadline +
+                "ms after the request");
+        }
+        car.inSche = false;
+        car.scheTarget = 0;
+    }
+
+    private void updateBegin(long time, int a, int b) {
+        for (int id : new int[] {a, b}) {
+            Car car = cars[id];
+            if (car.updateTransfer == 0 || car.inUpdate) {
+                violation(time, "elevator " + id + " begins UPDATE without a request");
+            }
+            if (car.doorOpen || car.load != 0) {
+                violation(time, "elevator " + id + " begins UPDATE with door open or passengers");
+            }
+            car.inUpdate = true;
+            car.updateBegunAt = time;
+            cancelReceives(id);
+        }
+    }
+
+    private void updateEnd(long time, int a, int b) {
+        for (int id : new int[] {a, b}) {
+            Car car = cars[id];
+            if (!car.inUpdate || time - car.updateBegunAt + slack < updateTime) {
+                violation(time, "elevator " + id + " ends UPDATE early or without beginning");
+            }
+            if (time - car.requestedAt > requestDeadline + slack) {
+                violation(time, "elevator " + id + " ends UPDATE more than " + requestDeadline +
+                    "ms after the request");
+            }
+            int transfer = car.updateTransfer;
+            car.inUpdate = false;
+            car.updateTransfer = 0;
+            car.transfer = transfer;
+            car.partner = id == a ? b : a;
+            car.speed = building.getTimePerFloor(id) / 2;
+            if (id == a) {
+                car.floor = transfer == -1 ? 1 : transfer + 1;
+                car.minFloor = transfer;
+            } else {
+                car.floor = transfer == 1 ? -1 : transfer - 1;
+                car.maxFloor = transfer;
+            }
+            car.departedAt = time;
+        }
+    }
+
+    // 临时调度与改造开始时，已分配给该电梯但尚未上车的乘客被取消分配
+    private void cancelReceives(int id) {
+        for (int person : cars[id].receiving) {
+            riders.get(person).receivedBy = 0;
+        }
+        cars[id].receiving.clear();
+    }
+
+    private void violation(long time, String message) {
+        violationCount++;
+        if (violations.size() < keptViolations) {
+            violations.add(String.format("[%.4f] %s", time / 1000.0, message));
+        }
+    }
+
+    public synchronized long getViolationCount() {
+        return violationCount + unfinished().size();
+    }
+
+    public synchronized double getRunTime() {
+        return lastTime / 1000.0;
+    }
+
+    // 每次到达 0.4，每次开门、关门各 0.1
+    public synchronized double getEnergy() {
+        return 0.4 * arrives + 0.1 * doors;
+    }
+
+    public synchronized double getWeightedTime() {
+        return prioritySum == 0 ? 0 : weightedTime / 1000.0 / prioritySum;
+    }
+
+    private List<String> unfinished() {
+        List<String> problems = new ArrayList<>();
+        if (!riders.isEmpty()) {
+            problems.add(riders.size() + " passengers not delivered");
+        }
+        for (int i = 1; i < cars.length; i++) {
+            Car car = cars[i];
+            if (car.doorOpen || car.inSche || car.inUpdate || car.scheTarget != 0 ||
+                car.updateTransfer != 0) {
+                problems.add("elevator " + i + " ends with door open or SCHE/UPDATE unfinished");
+            }
+        }
+        return problems;
+    }
+
+    public synchronized String report() {
+        List<String> problems = unfinished();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[verify] T=%.4f E=%.1f W=%.4f violations=%d%n", getRunTime(),
+            getEnergy(), getWeightedTime(), violationCount + problems.size()));
+        for (String v : violations) {
+            sb.append("  ").append(v).append('\n');
+        }
+        if (violationCount > violations.size()) {
+            sb.append("  ... ").append(violationCount - violations.size()).append(" more\n");
+        }
+        for (String p : problems) {
+            sb.append("  ").append(p).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static final class Car {
+        private int floor;
+        private int minFloor;
+        private int maxFloor;
+        private long speed;
+        private boolean doorOpen = false;
+        private long openedAt;
+        // 最近一次到达或关门的时刻，下一次到达不能早于此后一层的运行时间
+        private long departedAt = 0;
+        private int load = 0;
+        // 收到但尚未结束的临时调度的目标楼层，0 表示没有
+        private int scheTarget = 0;
+        private long scheSpeed;
+        // 尚未结束的临时调度或改造请求的输入时刻
+        private long requestedAt;
+        private boolean inSche = false;
+        // 收到但尚未结束的改造的换乘层，0 表示没有
+        private int updateTransfer = 0;
+        private boolean inUpdate = false;
+        private long updateBegunAt;
+        private int arrivesSinceRequest = 0;
+        private int transfer = 0;
+        private int partner = 0;
+        // 已分配给本电梯、尚未上车的乘客
+        private final Set<Integer> receiving = new HashSet<>();
+
+        private Car(int floor, int minFloor, int maxFloor, long speed) {
+            this.floor = floor;
+            this.minFloor = minFloor;
+            this.maxFloor = maxFloor;
+            this.speed = speed;
+        }
+    }
+
+    private static final class Rider {
+        private final int toFloor;
+        private final int priority;
+        private final long requestedAt;
+        private int floor;
+        private int receivedBy = 0;
+        private int inside = 0;
+
+        private Rider(int fromFloor, int toFloor, int priority, long requestedAt) {
+            this.floor = fromFloor;
+            this.toFloor = toFloor;
+            this.priority = priority;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import com.oocourse.elevator3.Request;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class VirtualClock implements SimClock {
+    private static final Comparator<Event> order =
+        Comparator.comparingLong(Event::getTime).thenComparingLong(Event::getSeq);
+    private final PriorityQueue<Event> events = new PriorityQueue<>(order);
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder();
+    private long now = 0;
+    private long seq = 0;
+    private Runnable continuation;
+    private long continuationTime;
+    private TraceWriter trace;
+    private Verifier verifier;
+
+    // out 为 null 时不输出事件，用于只关心指标的批量模拟
+    public VirtualClock(PrintStream out) {
+        this.out = out;
+    }
+
+    public void setTrace(TraceWriter trace) {
+        this.trace = trace;
+    }
+
+    public void setVerifier(Verifier verifier) {
+        this.verifier = verifier;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void delay(long millis, Runnable then) {
+        // 每个事件最多登记一个后续动作，由 Simulation 取走并排入事件队列
+        continuation = then;
+        continuationTime = now + millis;
+    }
+
+    @Override
+    public long log(EventType type, int a, int b, int c) {
+        if (out != null) {
+            line.setLength(0);
+            type.appendTo(line, now, a, b, c);
+            out.print(line);
+        }
+        if (trace != null) {
+            trace.event(type, now, a, b, c);
+        }
+        if (verifier != null) {
+            verifier.event(type, now, a, b, c);
+        }
+        return now;
+    }
+
+    @Override
+    public void record(Request request) {
+        if (trace != null) {
+            trace.input(now, request);
+        }
+        if (verifier != null) {
+            verifier.input(now, request);
+        }
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+
+    // 从检查点恢复时把时钟拨到检查点的时刻，须在登记任何事件之前调用
+    public void advanceTo(long time) {
+        now = Math.max(now, time);
+    }
+
+    public void schedule(long time, Runnable action) {
+        events.add(new Event(Math.max(time, now), seq++, action));
+    }
+
+    public boolean hasNext() {
+        return !events.isEmpty();
+    }
+
+    public long peekTime() {
+        return events.peek().getTime();
+    }
+
+    // 尚未执行的动作，按执行顺序排列，用于写出检查点
+    public List<Runnable> pending() {
+        List<Event> sorted = new ArrayList<>(events);
+        sorted.sort(order);
+        List<Runnable> actions = new ArrayList<>();
+        for (Event event : sorted) {
+            actions.add(event.getAction());
+        }
+        return actions;
+    }
+
+    public void runNext() {
+        Event event = events.poll();
+        now = event.getTime();
+        event.getAction().run();
+    }
+
+    public boolean hasContinuation() {
+        return continuation != null;
+    }
+
+    public long getContinuationTime() {
+        return continuationTime;
+    }
+
+    public Runnable takeContinuation() {
+        Runnable then = continuation;
+        continuation = null;
+        return then;
+    }
+
+    private static final class Event {
+        private final long time;
+        private final long seq;
+        private final Runnable action;
+
+        private Event(long time, long seq, Runnable action) {
+            this.time = time;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        private long getTime() {
+            return time;
+        }
+
+        private long getSeq() {
+            return seq;
+        }
+
+        private Runnable getAction() {
+            return action;
+        }
+    }
+}